@@ -0,0 +1,160 @@
+package de.intranda.goobi.plugins;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Node wide limits for all executions of the plugin, so that a large number of processes released at the same time does not overload the OID
+ * service and the storage.
+ *
+ * <ul>
+ * <li>Requests to the OID API are limited by a token bucket. Up to <code>requestBurst</code> requests can be sent at once, afterwards the requests
+ * are spread evenly to <code>requestsPerSecond</code>. Waiting requests are served in the order of their arrival.</li>
+ * <li>The number of processes that rename their files at the same time is limited by a fair pool of permits.</li>
+ * </ul>
+ *
+ * The time spent waiting is recorded in the {@link OidMetrics}. A limit of 0 disables the limit. The settings are updated by every execution, so
+ * they should be configured on the top level of the configuration file.
+ */
+@Log4j2
+class AdmissionControl {
+
+    private static final AdmissionControl INSTANCE = new AdmissionControl();
+
+    // token bucket, guarded by this; the bucket is full when the limit is configured the first time
+    private double requestsPerSecond;
+    private double burst = 1;
+    private double tokens = Double.MAX_VALUE;
+    private long lastRefill = System.nanoTime();
+
+    private final ResizableSemaphore renamePermits = new ResizableSemaphore();
+
+    private volatile int renameJobs;
+
+    AdmissionControl() {
+    }
+
+    static AdmissionControl getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Apply the limits of the configuration
+     *
+     * @param config plugin configuration
+     */
+    void configure(OidConfiguration config) {
+        configure(config.getLimitRequestsPerSecond(), config.getLimitRequestBurst(), config.getLimitRenameJobs());
+    }
+
+    /**
+     * Change the limits
+     *
+     * @param requestsPerSecond average number of requests per second, 0 for no limit
+     * @param requestBurst number of requests that can be sent at once
+     * @param renameJobs maximum number of processes renaming their files at the same time, 0 for no limit
+     */
+    synchronized void configure(double requestsPerSecond, int requestBurst, int renameJobs) {
+        this.requestsPerSecond = Math.max(0, requestsPerSecond);
+        this.burst = Math.max(1, requestBurst);
+        this.tokens = Math.min(tokens, burst);
+        if (renameJobs != this.renameJobs) {
+            // a disabled limit is represented by a permit that is never used
+            renamePermits.resize(Math.max(1, this.renameJobs), Math.max(1, renameJobs));
+            this.renameJobs = Math.max(0, renameJobs);
+        }
+    }
+
+    /**
+     * Wait until the next request to the OID API may be sent
+     *
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    void acquireRequest() throws InterruptedIOException {
+        long wait = reserveRequest(System.nanoTime());
+        if (wait <= 0) {
+            return;
+        }
+        OidMetrics.getInstance().recordRequestWait(wait);
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Waiting for the OID API rate limit was interrupted");
+        }
+    }
+
+    /**
+     * Take a token from the bucket. If the bucket is empty, the token is borrowed from the future, so later requests wait longer.
+     *
+     * @param now current time in nanoseconds
+     * @return time in nanoseconds to wait before the request is sent
+     */
+    synchronized long reserveRequest(long now) {
+        if (requestsPerSecond <= 0) {
+            return 0;
+        }
+        tokens = Math.min(burst, tokens + (now - lastRefill) * requestsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) (-tokens / requestsPerSecond * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Execute a rename plan when a permit is available
+     *
+     * @param strategy strategy to execute the plan
+     * @param plan planned renames
+     * @return errors of the strategy
+     */
+    List<String> rename(RenameStrategy strategy, List<FileRename> plan) {
+        if (renameJobs <= 0 || plan.isEmpty()) {
+            return strategy.execute(plan);
+        }
+        long start = System.nanoTime();
+        try {
+            renamePermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            List<String> errors = new ArrayList<>();
+            errors.add("Renaming was interrupted");
+            return errors;
+        }
+        OidMetrics.getInstance().recordRenameWait(System.nanoTime() - start);
+        try {
+            return strategy.execute(plan);
+        } finally {
+            renamePermits.release();
+        }
+    }
+
+    /**
+     * Semaphore whose number of permits can be changed while permits are in use
+     */
+    private static class ResizableSemaphore extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        ResizableSemaphore() {
+            super(1, true);
+        }
+
+        void resize(int oldSize, int newSize) {
+            if (newSize > oldSize) {
+                release(newSize - oldSize);
+            } else if (newSize < oldSize) {
+                // running jobs keep their permits, the pool shrinks when they are returned
+                reducePermits(oldSize - newSize);
+            }
+            log.debug("Changed number of parallel rename jobs from {} to {}", oldSize, newSize);
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Resilient execution of calls to the OID API.
+ *
+ * <ul>
+ * <li>The retry settings define how often the {@link EndpointBalancer} repeats a failed call and the exponential backoff between the attempts. The
+ * delay is a random value up to the current backoff, so that many processes failing at the same time do not retry at the same time.</li>
+ * <li>If hedging is enabled, a second request is sent when the first one takes longer than the configured percentile of the recent response times.
+ * The first successful response is used. A later successful response of the other request is passed to the caller as discarded.</li>
+ * <li>A circuit breaker lets all calls fail immediately while the service is down, instead of blocking threads with calls that will time out.</li>
+ * </ul>
+ *
+ * The breaker and the response times are shared by all executions that use the same url. If several urls are configured, the
+ * {@link EndpointBalancer} uses the average response time and the number of running calls of each policy to choose an endpoint.
+ */
+@Log4j2
+class ApiCallPolicy {
+
+    /**
+     * Call to the remote service
+     */
+    interface ApiCall<T> {
+        T call() throws IOException;
+    }
+
+    // one policy per API url
+    private static final Map<String, ApiCallPolicy> POLICIES = new ConcurrentHashMap<>();
+
+    private static final ExecutorService HEDGE_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "oid-api-call");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // minimum number of measured calls before a request is hedged
+    static final int MIN_SAMPLES = 20;
+
+    // weight of a new response time in the moving average
+    static final double AVERAGE_WEIGHT = 0.2;
+
+    @Getter
+    private final String name;
+
+    @Getter
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(0, 0);
+
+    private final LatencyWindow latencies = new LatencyWindow(100);
+
+    private volatile int attempts = 1;
+
+    private volatile long initialDelay;
+
+    private volatile long maxDelay;
+
+    private volatile int hedgePercentile;
+
+    private final AtomicInteger runningCalls = new AtomicInteger();
+
+    // exponentially weighted moving average of the response times in milliseconds
+    private double averageLatency;
+
+    ApiCallPolicy(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the policy for the given url. The settings are updated on every call, so changes in the configuration are used immediately.
+     *
+     * @param url url of the API
+     * @param config plugin configuration
+     * @return policy
+     */
+    static ApiCallPolicy getInstance(String url, OidConfiguration config) {
+        ApiCallPolicy policy = POLICIES.computeIfAbsent(url, ApiCallPolicy::new);
+        policy.configure(config.getRetryAttempts(), config.getRetryInitialDelay(), config.getRetryMaxDelay(),
+                config.isHedgingEnabled() ? config.getHedgingPercentile() : 0);
+        policy.circuitBreaker.configure(config.getCircuitBreakerFailureThreshold(),
+                TimeUnit.SECONDS.toMillis(config.getCircuitBreakerOpenDuration()));
+        return policy;
+    }
+
+    /**
+     * Change the settings
+     *
+     * @param attempts maximum number of attempts, at least 1
+     * @param initialDelay backoff in milliseconds after the first failure
+     * @param maxDelay maximum backoff in milliseconds
+     * @param hedgePercentile percentile of the response times after which a second request is sent, 0 disables hedging
+     */
+    void configure(int attempts, long initialDelay, long maxDelay, int hedgePercentile) {
+        this.attempts = Math.max(1, attempts);
+        this.initialDelay = Math.max(0, initialDelay);
+        this.maxDelay = Math.max(this.initialDelay, maxDelay);
+        this.hedgePercentile = Math.min(99, Math.max(0, hedgePercentile));
+    }
+
+    /**
+     * Execute the call once, without retries
+     *
+     * @param call call to the API
+     * @return result of the call
+     * @throws IOException if the call failed or the circuit breaker is open
+     */
+    <T> T attempt(ApiCall<T> call) throws IOException {
+        return attempt(call, result -> {
+        });
+    }
+
+    /**
+     * Execute the call once, without retries
+     *
+     * @param call call to the API
+     * @param discarded receives the successful response of a hedged request that was not used
+     * @return result of the call
+     * @throws IOException if the call failed or the circuit breaker is open
+     */
+    <T> T attempt(ApiCall<T> call, Consumer<T> discarded) throws IOException {
+        if (!circuitBreaker.allowRequest()) {
+            throw new IOException("OID API " + name + " is not available, circuit breaker is open");
+        }
+        runningCalls.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            T result = hedgePercentile > 0 ? executeHedged(call, discarded) : executeTimed(call);
+            circuitBreaker.onSuccess();
+            updateAverage(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), false);
+            return result;
+        } catch (IOException e) {
+            if (isInterrupted(e)) {
+                // the call was cancelled, not answered, so the endpoint is neither healthy nor failed
+                circuitBreaker.onCancel();
+                throw e;
+            }
+            circuitBreaker.onFailure();
+            updateAverage(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), true);
+            throw e;
+        } finally {
+            runningCalls.decrementAndGet();
+        }
+    }
+
+    /**
+     * Check if an exception was caused by an interruption of the current thread. Socket and connect timeouts are also
+     * {@link InterruptedIOException}s, but they are failures of the endpoint and must be retried.
+     *
+     * @param e exception of a call
+     * @return true, if the thread was interrupted
+     */
+    static boolean isInterrupted(IOException e) {
+        return e instanceof InterruptedIOException && Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Check if calls are allowed by the circuit breaker
+     *
+     * @return true, if the endpoint can be used
+     */
+    boolean isAvailable() {
+        return circuitBreaker.isAvailable();
+    }
+
+    int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Get the expected cost of a new call, the average response time multiplied by the number of calls that would be running
+     *
+     * @return cost, lower is better
+     */
+    synchronized double getLoad() {
+        return (averageLatency + 1) * (runningCalls.get() + 1);
+    }
+
+    synchronized double getAverageLatency() {
+        return averageLatency;
+    }
+
+    private synchronized void updateAverage(long millis, boolean failed) {
+        if (failed) {
+            // a failed call makes the endpoint less attractive, even if the error was returned quickly
+            averageLatency = Math.max(millis, averageLatency * 2 + 1);
+        } else if (averageLatency == 0) {
+            averageLatency = millis;
+        } else {
+            averageLatency += AVERAGE_WEIGHT * (millis - averageLatency);
+        }
+    }
+
+    /**
+     * Get a random delay up to the exponential backoff of the attempt
+     *
+     * @param attempt number of the failed attempt, starting with 1
+     * @return delay in milliseconds
+     */
+    long getBackoff(int attempt) {
+        long backoff = initialDelay << Math.min(attempt - 1, 30);
+        if (backoff <= 0 || backoff > maxDelay) {
+            backoff = maxDelay;
+        }
+        return backoff == 0 ? 0 : ThreadLocalRandom.current().nextLong(backoff + 1);
+    }
+
+    private <T> T executeTimed(ApiCall<T> call) throws IOException {
+        long start = System.nanoTime();
+        T result = call.call();
+        latencies.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return result;
+    }
+
+    private <T> T executeHedged(ApiCall<T> call, Consumer<T> discarded) throws IOException {
+        long threshold = latencies.getPercentile(hedgePercentile);
+        if (threshold < 0) {
+            // not enough response times known yet
+            return executeTimed(call);
+        }
+        // the first successful response is used, a later one is discarded, even if it arrives after the call returned
+        AtomicBoolean answered = new AtomicBoolean();
+        ApiCall<T> hedgedCall = () -> {
+            T result = executeTimed(call);
+            if (!answered.compareAndSet(false, true)) {
+                discarded.accept(result);
+            }
+            return result;
+        };
+        CompletionService<T> completion = new ExecutorCompletionService<>(HEDGE_EXECUTOR);
+        List<Future<T>> requests = new ArrayList<>(2);
+        requests.add(completion.submit(hedgedCall::call));
+        try {
+            Future<T> done = completion.poll(threshold, TimeUnit.MILLISECONDS);
+            if (done == null) {
+                log.debug("No response from OID API {} after {} ms, send a second request", name, threshold);
+                requests.add(completion.submit(hedgedCall::call));
+                done = completion.take();
+            }
+            try {
+                return done.get();
+            } catch (ExecutionException e) {
+                if (requests.size() == 1) {
+                    throw toIOException(e);
+                }
+                // the other request can still succeed
+                try {
+                    return completion.take().get();
+                } catch (ExecutionException second) {
+                    throw toIOException(second);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Call to OID API was interrupted");
+        } finally {
+            for (Future<T> request : requests) {
+                request.cancel(true);
+            }
+        }
+    }
+
+    private static IOException toIOException(ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+            return (IOException) e.getCause();
+        }
+        return new IOException(e.getCause());
+    }
+
+    static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Retry of OID API call was interrupted");
+        }
+    }
+
+    /**
+     * Response times of the most recent successful calls
+     */
+    static class LatencyWindow {
+
+        private final long[] values;
+
+        private int next;
+
+        private int size;
+
+        LatencyWindow(int capacity) {
+            values = new long[capacity];
+        }
+
+        synchronized void add(long millis) {
+            values[next] = millis;
+            next = (next + 1) % values.length;
+            size = Math.min(size + 1, values.length);
+        }
+
+        /**
+         * Get a percentile of the recorded response times
+         *
+         * @param percentile percentile between 1 and 99
+         * @return response time in milliseconds or -1, if less than {@link ApiCallPolicy#MIN_SAMPLES} values are known
+         */
+        synchronized long getPercentile(int percentile) {
+            if (size < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted[Math.min(size - 1, size * percentile / 100)];
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.goobi.beans.Step;
+import org.goobi.production.enums.LogType;
+import org.goobi.production.enums.PluginReturnValue;
+
+import de.sub.goobi.helper.CloseStepHelper;
+import de.sub.goobi.helper.Helper;
+import de.sub.goobi.helper.enums.StepStatus;
+import de.sub.goobi.helper.exceptions.DAOException;
+import de.sub.goobi.persistence.managers.StepManager;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Executes the plugin outside of the thread of the workflow engine. The step stays in work while the job is queued or running and is closed when
+ * the job is finished. If the job fails, the step is set to error. The plugin adds the reason to the process journal.
+ *
+ * The executor has a fixed number of threads and a bounded queue. If the queue is full, the plugin is executed synchronously by the calling
+ * thread, which slows down the workflow engine instead of accepting an unlimited number of jobs.
+ */
+@Log4j2
+class AsyncStepRunner {
+
+    private static AsyncStepRunner instance;
+
+    // processes with a queued or running job, shared between all instances
+    private static final Set<Integer> ACTIVE = ConcurrentHashMap.newKeySet();
+
+    private final int threads;
+
+    private final int queueSize;
+
+    private final ThreadPoolExecutor executor;
+
+    AsyncStepRunner(int threads, int queueSize) {
+        this.threads = Math.max(1, threads);
+        this.queueSize = Math.max(1, queueSize);
+        AtomicInteger counter = new AtomicInteger();
+        executor = new ThreadPoolExecutor(this.threads, this.threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(this.queueSize), r -> {
+            Thread thread = new Thread(r, "oid-step-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the runner for the given settings. If the settings were changed in the configuration, a new executor is created and the old one finishes
+     * its queued jobs.
+     *
+     * @param threads number of jobs executed in parallel
+     * @param queueSize maximum number of waiting jobs
+     * @return runner
+     */
+    static synchronized AsyncStepRunner getInstance(int threads, int queueSize) {
+        if (instance == null || instance.threads != Math.max(1, threads) || instance.queueSize != Math.max(1, queueSize)) {
+            if (instance != null) {
+                instance.executor.shutdown();
+            }
+            instance = new AsyncStepRunner(threads, queueSize);
+        }
+        return instance;
+    }
+
+    /**
+     * Queue the execution of the plugin
+     *
+     * @param plugin initialized plugin, must not be used by the caller afterwards
+     * @return WAIT if the job was queued or a job for the process is already queued, otherwise the result of the synchronous execution
+     */
+    PluginReturnValue submit(OidStepPlugin plugin) {
+        Integer processId = plugin.getStep().getProzess().getId();
+        if (!ACTIVE.add(processId)) {
+            log.debug("OID creation for process {} is already queued", processId);
+            return PluginReturnValue.WAIT;
+        }
+        try {
+            executor.execute(() -> runAndClose(plugin, processId));
+            return PluginReturnValue.WAIT;
+        } catch (RejectedExecutionException e) {
+            ACTIVE.remove(processId);
+            log.info("Queue of the OID creation is full, execute process {} synchronously", processId);
+            return plugin.runSynchronously();
+        }
+    }
+
+    private void runAndClose(OidStepPlugin plugin, Integer processId) {
+        PluginReturnValue result;
+        try {
+            result = plugin.runSynchronously();
+        } catch (RuntimeException e) {
+            // the plugin reports its own errors, only an unexpected exception is added to the journal here
+            log.error("OID creation for process {} failed", processId, e);
+            Helper.addMessageToProcessJournal(processId, LogType.ERROR,
+                    "The OID creation in step '" + plugin.getStep().getTitel() + "' failed, see the application log for details.", "- automatic -");
+            result = PluginReturnValue.ERROR;
+        } finally {
+            ACTIVE.remove(processId);
+        }
+        closeStep(plugin.getStep(), result);
+    }
+
+    /**
+     * Close the step after the job is finished or set it to error. The step is loaded again first and only changed if it is still in work, so a
+     * step that was executed and closed manually in the meantime is not closed a second time.
+     *
+     * @param step step of the job
+     * @param result result of the job
+     */
+    void closeStep(Step step, PluginReturnValue result) {
+        try {
+            Step current = loadStep(step);
+            if (current == null || current.getBearbeitungsstatusEnum() != StepStatus.INWORK) {
+                log.info("Step {} of process {} is not in work anymore, ignore the result {} of the OID creation", step.getTitel(),
+                        step.getProzess().getId(), result);
+                return;
+            }
+            updateStep(current, result);
+        } catch (DAOException | RuntimeException e) {
+            log.error("Cannot update step {} of process {}", step.getTitel(), step.getProzess().getId(), e);
+        }
+    }
+
+    /**
+     * Get the current state of the step from the database
+     */
+    Step loadStep(Step step) {
+        return StepManager.getStepById(step.getId());
+    }
+
+    /**
+     * Close the step or set it to error
+     *
+     * @param step current state of the step
+     * @param result result of the job
+     * @throws DAOException
+     */
+    void updateStep(Step step, PluginReturnValue result) throws DAOException {
+        if (result == PluginReturnValue.FINISH) {
+            CloseStepHelper.closeStep(step, null);
+        } else {
+            step.setBearbeitungsstatusEnum(StepStatus.ERROR);
+            step.setBearbeitungsende(new Date());
+            StepManager.saveStep(step);
+        }
+    }
+
+    /**
+     * Wait until all queued jobs are finished, used by tests
+     *
+     * @param timeout maximum time to wait in seconds
+     * @return true, if all jobs are finished
+     * @throws InterruptedException
+     */
+    boolean shutdownAndWait(int timeout) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeout, TimeUnit.SECONDS);
+    }
+}
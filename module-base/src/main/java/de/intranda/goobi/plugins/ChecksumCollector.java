@@ -0,0 +1,223 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.goobi.beans.Process;
+import org.goobi.production.enums.LogType;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.Helper;
+import de.sub.goobi.helper.exceptions.SwapException;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Calculates checksums of the renamed files while they are renamed, so that no separate step has to read all images again.
+ *
+ * All configured digests of a file are calculated in a single read. The checksums are written into one manifest per image folder and algorithm in
+ * the folder <code>checksums</code> of the process, named by the path of the image folder within the process, in the format of
+ * <code>sha256sum</code> and <code>md5sum</code>:
+ *
+ * <pre>
+ * checksums/images/00469418X_media.sha256
+ * ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad  300006253.jpg
+ * </pre>
+ *
+ * Existing manifests are updated: entries of the old file names are removed, entries of other files are kept.
+ */
+@Log4j2
+class ChecksumCollector {
+
+    static final String FOLDER = "checksums";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final List<String> algorithms;
+
+    // image folder -> new file name -> checksums in the order of the algorithms
+    private final Map<Path, Map<String, String[]>> checksums = new ConcurrentHashMap<>();
+
+    // image folder -> old file names
+    private final Map<Path, Set<String>> replaced = new ConcurrentHashMap<>();
+
+    /**
+     * Create a collector
+     *
+     * @param algorithms names of the digest algorithms, for example SHA-256 or MD5
+     * @throws NoSuchAlgorithmException if an algorithm is not supported
+     */
+    ChecksumCollector(List<String> algorithms) throws NoSuchAlgorithmException {
+        for (String algorithm : algorithms) {
+            MessageDigest.getInstance(algorithm);
+        }
+        this.algorithms = new ArrayList<>(algorithms);
+    }
+
+    /**
+     * Create a collector for the configured algorithms
+     *
+     * @param config plugin configuration
+     * @return collector or null, if no checksums are configured or the files are stored in S3
+     * @throws NoSuchAlgorithmException if a configured algorithm is not supported
+     */
+    static ChecksumCollector create(OidConfiguration config) throws NoSuchAlgorithmException {
+        if (!config.isChecksumsEnabled() || ConfigurationHelper.getInstance().useS3()) {
+            return null;
+        }
+        return new ChecksumCollector(config.getChecksumAlgorithms());
+    }
+
+    /**
+     * Store the checksums of a renamed file
+     *
+     * @param rename executed rename
+     * @param values checksums of the file, calculated with {@link #calculate(Path)} before it was moved
+     */
+    void add(FileRename rename, String[] values) {
+        Path folder = rename.getTarget().getParent();
+        checksums.computeIfAbsent(folder, k -> new ConcurrentHashMap<>()).put(rename.getTarget().getFileName().toString(), values);
+        replaced.computeIfAbsent(folder, k -> ConcurrentHashMap.newKeySet()).add(rename.getSource().getFileName().toString());
+    }
+
+    /**
+     * Calculate all digests of a file in a single read
+     *
+     * @param file file to read
+     * @return hex encoded checksums in the order of the algorithms
+     * @throws IOException
+     */
+    String[] calculate(Path file) throws IOException {
+        MessageDigest[] digests = new MessageDigest[algorithms.size()];
+        for (int i = 0; i < digests.length; i++) {
+            try {
+                digests[i] = MessageDigest.getInstance(algorithms.get(i));
+            } catch (NoSuchAlgorithmException e) {
+                // checked in the constructor
+                throw new IllegalStateException(e);
+            }
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                for (MessageDigest digest : digests) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+        String[] values = new String[digests.length];
+        for (int i = 0; i < digests.length; i++) {
+            values[i] = toHex(digests[i].digest());
+        }
+        return values;
+    }
+
+    boolean isEmpty() {
+        return checksums.isEmpty();
+    }
+
+    /**
+     * Write or update the manifests of all folders
+     *
+     * @param processFolder process data directory
+     * @throws IOException
+     */
+    void write(Path processFolder) throws IOException {
+        Path manifestFolder = Files.createDirectories(processFolder.resolve(FOLDER));
+        for (Map.Entry<Path, Map<String, String[]>> entry : checksums.entrySet()) {
+            Set<String> oldNames = replaced.get(entry.getKey());
+            for (int i = 0; i < algorithms.size(); i++) {
+                Path manifest = manifestFolder.resolve(getManifestName(processFolder, entry.getKey(), algorithms.get(i)));
+                Files.createDirectories(manifest.getParent());
+                Map<String, String> lines = read(manifest);
+                lines.keySet().removeAll(oldNames);
+                for (Map.Entry<String, String[]> file : entry.getValue().entrySet()) {
+                    lines.put(file.getKey(), file.getValue()[i]);
+                }
+                writeManifest(manifest, lines);
+            }
+        }
+        log.debug("Wrote checksums of {} folders into {}", checksums.size(), manifestFolder);
+    }
+
+    /**
+     * Write the manifests into the process folder. Missing checksums do not invalidate the renaming, so errors are only reported in the process
+     * journal.
+     *
+     * @param process process
+     */
+    void write(Process process) {
+        if (isEmpty()) {
+            return;
+        }
+        try {
+            write(Paths.get(process.getProcessDataDirectory()));
+        } catch (IOException | SwapException e) {
+            log.error("Cannot write checksums of process {}", process.getId(), e);
+            Helper.addMessageToProcessJournal(process.getId(), LogType.WARN, "Checksums could not be written: " + e.getMessage(), "- automatic -");
+        }
+    }
+
+    /**
+     * Get the name of the manifest for a folder, for example <code>images/00469418X_media.sha256</code>. The path within the process is used, so
+     * folders with the same name in different parent folders get different manifests.
+     */
+    static String getManifestName(Path processFolder, Path folder, String algorithm) {
+        Path name = folder.startsWith(processFolder) ? processFolder.relativize(folder) : folder.getFileName();
+        return name + "." + algorithm.toLowerCase().replace("-", "");
+    }
+
+    private static Map<String, String> read(Path manifest) throws IOException {
+        Map<String, String> lines = new TreeMap<>(PaginationBuilder::compareNatural);
+        if (!Files.exists(manifest)) {
+            return lines;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf("  ");
+                if (separator > 0) {
+                    lines.put(line.substring(separator + 2), line.substring(0, separator));
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static void writeManifest(Path manifest, Map<String, String> lines) throws IOException {
+        Path tmp = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> line : lines.entrySet()) {
+                writer.write(line.getValue() + "  " + line.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,91 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * Circuit breaker for calls to a remote service. After the configured number of consecutive failures the circuit opens and all calls fail
+ * immediately. When the open duration is over, a single trial call is allowed. If it succeeds, the circuit is closed again, otherwise it stays open
+ * for another period.
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private volatile int failureThreshold;
+
+    private volatile long openMillis;
+
+    private State state = State.CLOSED;
+
+    private int failures;
+
+    private long openedAt;
+
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        configure(failureThreshold, openMillis);
+    }
+
+    /**
+     * Change the settings, the current state is kept
+     *
+     * @param failureThreshold number of consecutive failures that open the circuit, 0 disables the breaker
+     * @param openMillis time in milliseconds the circuit stays open
+     */
+    void configure(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Check if a call is allowed. In the half open state only one trial call is allowed until its result is reported.
+     *
+     * @return true, if the call can be executed
+     */
+    synchronized boolean allowRequest() {
+        if (failureThreshold <= 0 || state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if a call would be allowed, without changing the state
+     *
+     * @return true, if the circuit is closed or a trial call is due
+     */
+    synchronized boolean isAvailable() {
+        return failureThreshold <= 0 || state == State.CLOSED || state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis;
+    }
+
+    synchronized void onSuccess() {
+        failures = 0;
+        state = State.CLOSED;
+    }
+
+    synchronized void onFailure() {
+        failures++;
+        if (failureThreshold > 0 && (state == State.HALF_OPEN || failures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Report a call that was cancelled before it returned. A trial call can be repeated at once, so the circuit does not stay half open.
+     */
+    synchronized void onCancel() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,54 @@
+package de.intranda.goobi.plugins;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ugh.dl.ContentFile;
+import ugh.dl.DigitalDocument;
+
+/**
+ * Index of all content files of a digital document by the file name of their location. It is created once after the METS file was opened and
+ * replaces the search over the complete file set for every renamed page.
+ */
+class ContentFileIndex {
+
+    // file name -> content files in all file groups
+    private final Map<String, List<ContentFile>> filesByName = new HashMap<>();
+
+    ContentFileIndex(DigitalDocument dd) {
+        if (dd.getFileSet() != null && dd.getFileSet().getAllFiles() != null) {
+            for (ContentFile cf : dd.getFileSet().getAllFiles()) {
+                if (cf.getLocation() != null) {
+                    filesByName.computeIfAbsent(getFilename(cf.getLocation()), k -> new ArrayList<>(2)).add(cf);
+                }
+            }
+        }
+    }
+
+    /**
+     * Change the location of all content files with the old file name and update the index
+     *
+     * @param oldFilename old file name including extension
+     * @param newLocation new location
+     */
+    void relocate(String oldFilename, String newLocation) {
+        List<ContentFile> files = filesByName.remove(oldFilename);
+        if (files != null) {
+            for (ContentFile cf : files) {
+                cf.setLocation(newLocation);
+            }
+            filesByName.computeIfAbsent(getFilename(newLocation), k -> new ArrayList<>(files.size())).addAll(files);
+        }
+    }
+
+    static String getFilename(String location) {
+        int slash = location.lastIndexOf('/');
+        if (slash == -1) {
+            return Paths.get(location).getFileName().toString();
+        }
+        return location.substring(slash + 1);
+    }
+}
@@ -0,0 +1,98 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import org.goobi.beans.Process;
+import org.goobi.production.enums.LogType;
+import org.goobi.production.enums.PluginReturnValue;
+
+import de.sub.goobi.helper.Helper;
+import de.sub.goobi.helper.exceptions.SwapException;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Executes the renames that were deferred with <code>deferRenames</code>. The METS file already contains the new file names, only the files in
+ * the image folders still have their old names.
+ *
+ * The deferred renames are also executed by every later run of the plugin with <code>deferRenames</code> disabled, for example in a separate
+ * workflow step. This class allows other plugins or scripts to execute them directly, for example right before an export.
+ */
+@Log4j2
+public class DeferredRenamer {
+
+    private final OidConfiguration config;
+
+    /**
+     * Create a renamer with the configuration of the given project
+     *
+     * @param projectName name of the project
+     */
+    public DeferredRenamer(String projectName) {
+        config = OidConfiguration.getInstance(new OidStepPlugin().getTitle(), projectName, "");
+    }
+
+    /**
+     * Check if the process has deferred renames
+     *
+     * @param process process
+     * @return true, if files must still be renamed
+     */
+    public boolean hasDeferredRenames(Process process) {
+        try {
+            RenameJournal journal = RenameJournal.open(Paths.get(process.getProcessDataDirectory()));
+            return journal.isDeferred() && !journal.getRenames().isEmpty();
+        } catch (IOException | SwapException e) {
+            log.error(e);
+            return false;
+        }
+    }
+
+    /**
+     * Execute the deferred renames of a process. The journal is removed when all files were renamed.
+     *
+     * @param process process
+     * @return FINISH if all files were renamed or nothing was deferred, ERROR otherwise
+     */
+    public PluginReturnValue execute(Process process) {
+        try {
+            ProcessLocks.lock(process.getId());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return PluginReturnValue.ERROR;
+        }
+        try {
+            RenameJournal journal = RenameJournal.open(Paths.get(process.getProcessDataDirectory()));
+            if (!journal.isDeferred()) {
+                // the journal of an interrupted run is finished by the plugin itself
+                return PluginReturnValue.FINISH;
+            }
+            List<FileRename> pending = journal.getPendingRenames();
+            ChecksumCollector checksums = ChecksumCollector.create(config);
+            List<String> errors = RenameStrategy.create(config, journal, checksums).execute(pending);
+            if (checksums != null) {
+                checksums.write(process);
+            }
+            if (!errors.isEmpty()) {
+                Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, RenameExecutor.getErrorSummary(errors), "- automatic -");
+                return PluginReturnValue.ERROR;
+            }
+            journal.delete();
+            log.debug("Executed {} deferred renames of process {}", pending.size(), process.getId());
+            return PluginReturnValue.FINISH;
+        } catch (NoSuchAlgorithmException e) {
+            // reported before any file is renamed
+            log.error(e);
+            Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "Invalid checksum algorithm in the configuration: " + e.getMessage(),
+                    "- automatic -");
+            return PluginReturnValue.ERROR;
+        } catch (IOException | SwapException e) {
+            log.error(e);
+            return PluginReturnValue.ERROR;
+        } finally {
+            ProcessLocks.unlock(process.getId());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Distributes the calls to the OID API over several endpoints, for example the replicas of the OID service.
+ *
+ * For each call two available endpoints are chosen at random and the one with the lower load is used. The load is the moving average of the
+ * response times multiplied by the number of running calls, so slow or busy endpoints get fewer calls without always sending every call to the
+ * fastest endpoint.
+ *
+ * The health of the endpoints is tracked with the circuit breaker of their {@link ApiCallPolicy}: an endpoint whose breaker is open is not used
+ * until a trial call is due. If a call fails, it is repeated immediately on another endpoint. When every endpoint failed, the next round starts
+ * after the backoff of the retry settings.
+ *
+ * Each attempt waits for the rate limit of the {@link AdmissionControl} before it is sent, so the waiting time does not count as response time.
+ */
+@Log4j2
+class EndpointBalancer {
+
+    /**
+     * Call to one endpoint
+     */
+    interface EndpointCall<T> {
+        T call(String url) throws IOException;
+    }
+
+    private final List<ApiCallPolicy> endpoints;
+
+    private final AdmissionControl admission;
+
+    EndpointBalancer(List<ApiCallPolicy> endpoints) {
+        this(endpoints, AdmissionControl.getInstance());
+    }
+
+    /**
+     * @param endpoints policies of the endpoints
+     * @param admission rate limit for the requests
+     */
+    EndpointBalancer(List<ApiCallPolicy> endpoints, AdmissionControl admission) {
+        this.endpoints = endpoints;
+        this.admission = admission;
+    }
+
+    /**
+     * Get the balancer for all configured urls
+     *
+     * @param config plugin configuration
+     * @return balancer
+     */
+    static EndpointBalancer getInstance(OidConfiguration config) {
+        List<ApiCallPolicy> endpoints = new ArrayList<>(config.getUrls().size());
+        for (String url : config.getUrls()) {
+            endpoints.add(ApiCallPolicy.getInstance(url, config));
+        }
+        return new EndpointBalancer(endpoints);
+    }
+
+    /**
+     * Execute the call on the best endpoint and fail over to the other endpoints
+     *
+     * @param call call to the API
+     * @return result of the first successful call
+     * @throws IOException if all attempts failed or no endpoint is available
+     */
+    <T> T execute(EndpointCall<T> call) throws IOException {
+        return execute(call, result -> {
+        });
+    }
+
+    /**
+     * Execute the call on the best endpoint and fail over to the other endpoints
+     *
+     * @param call call to the API
+     * @param discarded receives the successful responses of hedged requests that were not used
+     * @return result of the first successful call
+     * @throws IOException if all attempts failed or no endpoint is available
+     */
+    <T> T execute(EndpointCall<T> call, Consumer<T> discarded) throws IOException {
+        int rounds = endpoints.get(0).getAttempts();
+        IOException lastError = null;
+        for (int round = 1; round <= rounds; round++) {
+            Set<ApiCallPolicy> tried = new HashSet<>();
+            ApiCallPolicy endpoint;
+            while ((endpoint = choose(tried)) != null) {
+                tried.add(endpoint);
+                String url = endpoint.getName();
+                // wait for the rate limit outside of the measured call, a hedged second request does not take another token
+                admission.acquireRequest();
+                try {
+                    return endpoint.attempt(() -> call.call(url), discarded);
+                } catch (IOException e) {
+                    if (ApiCallPolicy.isInterrupted(e)) {
+                        throw e;
+                    }
+                    lastError = e;
+                    log.warn("Call {} of {} to OID API {} failed: {}", round, rounds, url, e.getMessage());
+                }
+            }
+            if (tried.isEmpty()) {
+                throw new IOException("No OID API endpoint is available, all circuit breakers are open", lastError);
+            }
+            if (round < rounds) {
+                ApiCallPolicy.sleep(endpoints.get(0).getBackoff(round));
+            }
+        }
+        throw lastError;
+    }
+
+    /**
+     * Choose the endpoint for the next call with the power of two choices
+     *
+     * @param excluded endpoints that already failed for this call
+     * @return endpoint or null, if no endpoint is available
+     */
+    ApiCallPolicy choose(Set<ApiCallPolicy> excluded) {
+        List<ApiCallPolicy> candidates = new ArrayList<>(endpoints.size());
+        for (ApiCallPolicy endpoint : endpoints) {
+            if (!excluded.contains(endpoint) && endpoint.isAvailable()) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.size() <= 1) {
+            return candidates.isEmpty() ? null : candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        ApiCallPolicy a = candidates.get(first);
+        ApiCallPolicy b = candidates.get(second);
+        return a.getLoad() <= b.getLoad() ? a : b;
+    }
+}
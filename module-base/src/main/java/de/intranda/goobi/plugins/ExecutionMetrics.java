@@ -0,0 +1,90 @@
+package de.intranda.goobi.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.Getter;
+
+/**
+ * Timings and counters of a single execution of the plugin
+ */
+@Getter
+class ExecutionMetrics {
+
+    private final long[] durations = new long[Phase.values().length];
+
+    // OIDs returned by the API during this execution
+    private int oidsRequested;
+    // OIDs assigned to objects, including OIDs of an interrupted execution taken from the journal
+    private int oidsUsed;
+    // requested OIDs that were not assigned
+    private int oidsWasted;
+    private int filesRenamed;
+    private int failures;
+
+    /**
+     * Start the time measurement of a phase
+     *
+     * @return start time to pass to {@link #stop(Phase, long)}
+     */
+    long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Stop the time measurement of a phase. A phase can be measured several times, the durations are added.
+     *
+     * @param phase measured phase
+     * @param start start time returned by {@link #start()}
+     */
+    void stop(Phase phase, long start) {
+        durations[phase.ordinal()] += System.nanoTime() - start;
+    }
+
+    long getDuration(Phase phase) {
+        return durations[phase.ordinal()];
+    }
+
+    void addOidsRequested(int count) {
+        oidsRequested += count;
+    }
+
+    void addOidsUsed(int count) {
+        oidsUsed += count;
+    }
+
+    void addOidsWasted(int count) {
+        oidsWasted += count;
+    }
+
+    void addFilesRenamed(int count) {
+        filesRenamed += count;
+    }
+
+    void addFailures(int count) {
+        failures += count;
+    }
+
+    /**
+     * Get a single line summary for the process journal
+     *
+     * @return summary
+     */
+    String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("OID creation: ")
+                .append(oidsRequested)
+                .append(" OIDs requested, ")
+                .append(oidsUsed)
+                .append(" used, ")
+                .append(oidsWasted)
+                .append(" wasted, ")
+                .append(filesRenamed)
+                .append(" files renamed, ")
+                .append(failures)
+                .append(" failures;");
+        for (Phase phase : Phase.values()) {
+            sb.append(' ').append(phase.getLabel()).append(' ').append(TimeUnit.NANOSECONDS.toMillis(getDuration(phase))).append(" ms");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,23 @@
+package de.intranda.goobi.plugins;
+
+import java.nio.file.Path;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * A single planned move of a file to its new name.
+ */
+@Getter
+@RequiredArgsConstructor
+class FileRename {
+
+    private final Path source;
+
+    private final Path target;
+
+    @Override
+    public String toString() {
+        return source + " -> " + target;
+    }
+}
@@ -0,0 +1,178 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+
+/**
+ * Selects the folders of a process whose files are renamed.
+ *
+ * The folders are configured as patterns relative to the process folder, for example <code>images/*_media</code>. Only the directories on the way
+ * to the matching folders are listed, so large folders that are not configured are never read. A folder is used, if it matches a
+ * <code>rename</code> pattern and no <code>skip</code> pattern. Folders that also match a <code>validate</code> pattern must contain exactly one
+ * file per page.
+ */
+class FolderScope {
+
+    private static final DirectoryStream.Filter<Path> FILES = p -> !p.getFileName().toString().startsWith(".") && Files.isRegularFile(p);
+
+    private final List<String> renamePatterns;
+
+    private final List<PathMatcher> validate;
+
+    private final List<PathMatcher> skip;
+
+    private final boolean s3;
+
+    /**
+     * @param renamePatterns patterns of the folders whose files are renamed
+     * @param validatePatterns patterns of the folders that must contain one file per page
+     * @param skipPatterns patterns of the folders that are never renamed
+     * @param s3 true, if the folders are listed with the {@link StorageProvider}, false to read the local file system
+     */
+    FolderScope(List<String> renamePatterns, List<String> validatePatterns, List<String> skipPatterns, boolean s3) {
+        this.renamePatterns = renamePatterns;
+        this.validate = toMatchers(validatePatterns);
+        this.skip = toMatchers(skipPatterns);
+        this.s3 = s3;
+    }
+
+    static FolderScope create(OidConfiguration config) {
+        return new FolderScope(config.getRenameFolders(), config.getValidateFolders(), config.getSkipFolders(),
+                ConfigurationHelper.getInstance().useS3());
+    }
+
+    /**
+     * Find the folders whose files are renamed
+     *
+     * @param processFolder process data directory
+     * @return existing folders in alphabetical order
+     * @throws IOException
+     */
+    Set<Path> findFolders(Path processFolder) throws IOException {
+        Set<Path> folders = new TreeSet<>();
+        for (String pattern : renamePatterns) {
+            find(processFolder, pattern.split("/"), 0, folders);
+        }
+        folders.removeIf(folder -> matches(skip, processFolder, folder));
+        return folders;
+    }
+
+    /**
+     * Check if the folder must contain one file per page
+     *
+     * @param processFolder process data directory
+     * @param folder folder of the process
+     * @return true, if the folder matches a validate pattern
+     */
+    boolean isValidated(Path processFolder, Path folder) {
+        return matches(validate, processFolder, folder);
+    }
+
+    /**
+     * Pass all files of a folder to the action, without collecting them in a list first. Hidden files and sub folders are ignored.
+     *
+     * @param folder folder to read
+     * @param action action for each file
+     * @return number of files
+     * @throws IOException
+     */
+    int forEachFile(Path folder, Consumer<Path> action) throws IOException {
+        int count = 0;
+        if (s3) {
+            for (Path file : StorageProvider.getInstance().listFiles(folder.toString())) {
+                action.accept(file);
+                count++;
+            }
+            return count;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, FILES)) {
+            for (Path file : stream) {
+                action.accept(file);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void find(Path folder, String[] segments, int index, Set<Path> result) throws IOException {
+        if (index == segments.length) {
+            if (isDirectory(folder)) {
+                result.add(folder);
+            }
+            return;
+        }
+        String segment = segments[index];
+        if (segment.isEmpty() || ".".equals(segment)) {
+            find(folder, segments, index + 1, result);
+        } else if (!hasWildcard(segment)) {
+            find(folder.resolve(segment), segments, index + 1, result);
+        } else if (isDirectory(folder)) {
+            for (Path child : listFolders(folder, segment)) {
+                find(child, segments, index + 1, result);
+            }
+        }
+    }
+
+    private List<Path> listFolders(Path folder, String glob) throws IOException {
+        List<Path> folders = new ArrayList<>();
+        if (s3) {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            for (String name : StorageProvider.getInstance().listDirNames(folder.toString())) {
+                if (matcher.matches(Paths.get(name))) {
+                    folders.add(folder.resolve(name));
+                }
+            }
+            return folders;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, glob)) {
+            for (Path child : stream) {
+                if (Files.isDirectory(child)) {
+                    folders.add(child);
+                }
+            }
+        }
+        return folders;
+    }
+
+    private boolean isDirectory(Path folder) {
+        if (s3) {
+            return StorageProvider.getInstance().isDirectory(folder);
+        }
+        return Files.isDirectory(folder);
+    }
+
+    private static boolean hasWildcard(String segment) {
+        return segment.indexOf('*') != -1 || segment.indexOf('?') != -1 || segment.indexOf('[') != -1 || segment.indexOf('{') != -1;
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path processFolder, Path folder) {
+        Path relative = processFolder.relativize(folder);
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(relative)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<PathMatcher> toMatchers(List<String> patterns) {
+        List<PathMatcher> matchers = new ArrayList<>(patterns.size());
+        for (String pattern : patterns) {
+            matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern));
+        }
+        return matchers;
+    }
+}
@@ -0,0 +1,84 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+
+import org.apache.commons.lang.StringUtils;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Requests new OIDs from the OID API. The number of requested OIDs is appended to the configured url. Large requests are split into chunks of the
+ * configured size. Each chunk is requested with the retries, hedging and circuit breaker of the {@link ApiCallPolicy}. If several urls are
+ * configured, each chunk is sent to the endpoint chosen by the {@link EndpointBalancer}, which also waits for the rate limit of the
+ * {@link AdmissionControl}.
+ *
+ * If an idempotency key is given, it is sent together with the position of the chunk in the header <code>Idempotency-Key</code>. Repeated
+ * requests for the same chunk use the same key, so an API that supports the header can answer them with the OIDs of the first request.
+ */
+@RequiredArgsConstructor
+class HttpOidSource implements OidSource {
+
+    static final String IDEMPOTENCY_HEADER = "Idempotency-Key";
+
+    private final EndpointBalancer endpoints;
+    private final String username;
+    private final String password;
+    private final String headerParam;
+    private final String headerValue;
+    private final int chunkSize;
+    private final String idempotencyKey;
+
+    /**
+     * Create a source that requests each chunk only once
+     */
+    HttpOidSource(String url, String username, String password, String headerParam, String headerValue, int chunkSize) {
+        this(url, username, password, headerParam, headerValue, chunkSize, new ApiCallPolicy(url), null);
+    }
+
+    /**
+     * Create a source for a single url
+     */
+    HttpOidSource(String url, String username, String password, String headerParam, String headerValue, int chunkSize, ApiCallPolicy policy,
+            String idempotencyKey) {
+        this(new EndpointBalancer(Collections.singletonList(policy)), username, password, headerParam, headerValue, chunkSize, idempotencyKey);
+    }
+
+    @Override
+    public long[] getOids(int count) throws IOException {
+        long[] oids = new long[count];
+        int received = 0;
+        while (received < count) {
+            int requested = chunkSize > 0 ? Math.min(chunkSize, count - received) : count - received;
+            // each chunk is parsed into its own array, a hedged request must not overwrite the OIDs of the other one
+            String key = idempotencyKey == null ? null : idempotencyKey + "-" + received;
+            long[] chunk = endpoints.execute(url -> requestChunk(url, requested, key), this::discard);
+            System.arraycopy(chunk, 0, oids, received, requested);
+            received += requested;
+        }
+        return oids;
+    }
+
+    /**
+     * Count the OIDs of a hedged response that was not used. With an idempotency key both responses contain the same OIDs, so nothing is lost.
+     */
+    private void discard(long[] chunk) {
+        if (idempotencyKey == null) {
+            OidMetrics.getInstance().recordWastedOids(chunk.length);
+        }
+    }
+
+    private long[] requestChunk(String url, int requested, String key) throws IOException {
+        String response = OidStepPlugin.getStringFromUrl(url + requested, username, password, headerParam, headerValue, key);
+        if (StringUtils.isBlank(response)) {
+            throw new IOException("No response from OID API " + url);
+        }
+        long[] chunk = new long[requested];
+        int read = OidResponseParser.parse(new StringReader(response), chunk, 0, requested);
+        if (read < requested) {
+            throw new IOException("OID API returned " + read + " OIDs, but " + requested + " were requested");
+        }
+        return chunk;
+    }
+}
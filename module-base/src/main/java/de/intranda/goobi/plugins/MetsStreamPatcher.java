@@ -0,0 +1,457 @@
+package de.intranda.goobi.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import de.sub.goobi.helper.BackupFileManager;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Reads and patches a METS file with StAX, without loading it into the UGH object model.
+ *
+ * The file is scanned once for the values the plugin needs: the identifier of the main element and the OID and image file of each page. The
+ * patched file is streamed into a new file afterwards. All elements are copied unchanged, except for
+ * <ul>
+ * <li>the metadata <code>CatalogIDDigital</code> of the main element, which is replaced or added to the goobi extension of its dmdSec</li>
+ * <li>the attribute <code>CONTENTIDS</code> of the physical root element and of the pages, which UGH reads as metadata <code>_urn</code></li>
+ * <li>the attribute <code>xlink:href</code> of all <code>mets:FLocat</code> elements pointing to a renamed image</li>
+ * </ul>
+ *
+ * Files that cannot be patched reliably, like volumes of multi-volume works or files without pages, are marked as not supported and must be
+ * handled with UGH.
+ */
+@Log4j2
+class MetsStreamPatcher {
+
+    static final String METS_NS = "http://www.loc.gov/METS/";
+
+    static final String XLINK_NS = "http://www.w3.org/1999/xlink";
+
+    private static final String IDENTIFIER = "CatalogIDDigital";
+
+    private static final String CONTENTIDS = "CONTENTIDS";
+
+    private final Path file;
+
+    @Getter
+    private String unsupportedReason;
+
+    // dmdSec of the main element
+    private String logicalDmdId;
+
+    /**
+     * Current value of CatalogIDDigital of the main element or null
+     */
+    @Getter
+    private String mainOid;
+
+    private String physicalId;
+
+    @Getter
+    private final List<Page> pages = new ArrayList<>();
+
+    // changes to write
+    private String newMainOid;
+    private final Map<String, String> newPageOids = new HashMap<>();
+    private final Map<String, String> relocations = new HashMap<>();
+
+    private MetsStreamPatcher(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * A physical page of the METS file
+     */
+    @Getter
+    @RequiredArgsConstructor
+    static class Page {
+
+        private final String id;
+
+        /**
+         * Current OID of the page or null
+         */
+        private final String oid;
+
+        private final List<String> fileIds = new ArrayList<>(2);
+
+        /**
+         * File name of the image, without path
+         */
+        private String filename;
+    }
+
+    /**
+     * Scan a METS file
+     *
+     * @param file METS file
+     * @return patcher, check {@link #isSupported()} before using it
+     * @throws IOException if the file cannot be read or is no valid XML
+     */
+    static MetsStreamPatcher scan(Path file) throws IOException {
+        MetsStreamPatcher patcher = new MetsStreamPatcher(file);
+        try (InputStream in = Files.newInputStream(file)) {
+            XMLStreamReader reader = createInputFactory().createXMLStreamReader(in);
+            try {
+                patcher.scan(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot read METS file " + file, e);
+        }
+        return patcher;
+    }
+
+    private void scan(XMLStreamReader reader) throws XMLStreamException {
+        // dmdSec id -> CatalogIDDigital
+        Map<String, String> identifiers = new HashMap<>();
+        Set<String> dmdSecsWithExtension = new HashSet<>();
+        // file id -> href
+        Map<String, String> hrefs = new HashMap<>();
+        Set<String> localFiles = new HashSet<>();
+
+        String dmdId = null;
+        String fileGroup = null;
+        String fileId = null;
+        String structMap = null;
+        int divDepth = 0;
+        Page page = null;
+        boolean anchor = false;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                if (METS_NS.equals(reader.getNamespaceURI())) {
+                    switch (name) {
+                        case "dmdSec":
+                            dmdId = reader.getAttributeValue(null, "ID");
+                            break;
+                        case "fileGrp":
+                            fileGroup = reader.getAttributeValue(null, "USE");
+                            break;
+                        case "file":
+                            fileId = reader.getAttributeValue(null, "ID");
+                            if ("LOCAL".equals(fileGroup)) {
+                                localFiles.add(fileId);
+                            }
+                            break;
+                        case "FLocat":
+                            if (fileId != null) {
+                                hrefs.put(fileId, reader.getAttributeValue(XLINK_NS, "href"));
+                            }
+                            break;
+                        case "structMap":
+                            structMap = reader.getAttributeValue(null, "TYPE");
+                            divDepth = 0;
+                            break;
+                        case "div":
+                            divDepth++;
+                            if ("LOGICAL".equals(structMap) && divDepth == 1) {
+                                logicalDmdId = reader.getAttributeValue(null, "DMDID");
+                            } else if ("PHYSICAL".equals(structMap) && divDepth == 1) {
+                                physicalId = reader.getAttributeValue(null, "ID");
+                            } else if ("PHYSICAL".equals(structMap) && divDepth == 2) {
+                                page = new Page(reader.getAttributeValue(null, "ID"), reader.getAttributeValue(null, CONTENTIDS));
+                                pages.add(page);
+                            }
+                            break;
+                        case "mptr":
+                            if ("LOGICAL".equals(structMap)) {
+                                anchor = true;
+                            }
+                            break;
+                        case "fptr":
+                            if (page != null && divDepth == 2) {
+                                page.fileIds.add(reader.getAttributeValue(null, "FILEID"));
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                } else if (dmdId != null && "goobi".equals(name)) {
+                    dmdSecsWithExtension.add(dmdId);
+                } else if (dmdId != null && "metadata".equals(name) && IDENTIFIER.equals(reader.getAttributeValue(null, "name"))
+                        && !identifiers.containsKey(dmdId)) {
+                    identifiers.put(dmdId, reader.getElementText());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && METS_NS.equals(reader.getNamespaceURI())) {
+                switch (reader.getLocalName()) {
+                    case "dmdSec":
+                        dmdId = null;
+                        break;
+                    case "file":
+                        fileId = null;
+                        break;
+                    case "structMap":
+                        structMap = null;
+                        break;
+                    case "div":
+                        if (divDepth == 2) {
+                            page = null;
+                        }
+                        divDepth--;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        if (anchor) {
+            unsupportedReason = "the METS file belongs to a multi-volume work";
+        } else if (logicalDmdId == null || !dmdSecsWithExtension.contains(logicalDmdId)) {
+            unsupportedReason = "the main element has no metadata section";
+        } else if (physicalId == null || pages.isEmpty()) {
+            unsupportedReason = "the METS file does not contain any pages";
+        } else {
+            mainOid = identifiers.get(logicalDmdId);
+            for (Page p : pages) {
+                // use the file of the LOCAL group like UGH, the first file otherwise
+                String href = null;
+                for (String id : p.fileIds) {
+                    if (href == null || localFiles.contains(id)) {
+                        href = hrefs.get(id);
+                    }
+                    if (localFiles.contains(id)) {
+                        break;
+                    }
+                }
+                if (href == null) {
+                    unsupportedReason = "page " + p.id + " has no image";
+                    return;
+                }
+                p.filename = ContentFileIndex.getFilename(href);
+            }
+        }
+    }
+
+    /**
+     * @return true, if the file can be patched
+     */
+    boolean isSupported() {
+        return unsupportedReason == null;
+    }
+
+    /**
+     * Set the OID of the main element. It is written as CatalogIDDigital of the main element and as CONTENTIDS of the physical root element.
+     *
+     * @param oid new OID
+     */
+    void setMainOid(String oid) {
+        newMainOid = oid;
+    }
+
+    /**
+     * Set the OID of a page and the new location of its image files
+     *
+     * @param page page
+     * @param oid new OID
+     * @param newLocation new location of all files with the old file name of the page
+     */
+    void setPageOid(Page page, String oid, String newLocation) {
+        newPageOids.put(page.id, oid);
+        relocations.put(page.filename, newLocation);
+    }
+
+    /**
+     * @return new OID of the main element, null if it is not changed
+     */
+    String getNewMainOid() {
+        return newMainOid;
+    }
+
+    /**
+     * @return OID of the main element including the changes
+     */
+    String getAssignedMainOid() {
+        return newMainOid != null ? newMainOid : mainOid;
+    }
+
+    /**
+     * @return OIDs of all pages including the changes, null for pages without OID
+     */
+    List<String> getAssignedPageOids() {
+        List<String> oids = new ArrayList<>(pages.size());
+        for (Page page : pages) {
+            oids.add(newPageOids.getOrDefault(page.id, page.oid));
+        }
+        return oids;
+    }
+
+    /**
+     * Write the changes. The patched file is written into a temporary file first and replaces the METS file after a backup was created with the
+     * same routine that Goobi uses when it saves the METS file.
+     *
+     * @param numberOfBackups number of backups to keep
+     * @throws IOException
+     */
+    void write(int numberOfBackups) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (InputStream in = Files.newInputStream(file); OutputStream out = Files.newOutputStream(tmp)) {
+            patch(in, out);
+        } catch (XMLStreamException e) {
+            Files.deleteIfExists(tmp);
+            throw new IOException("Cannot write METS file " + file, e);
+        }
+        createBackup(numberOfBackups);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void createBackup(int numberOfBackups) throws IOException {
+        String folder = file.getParent().toString() + File.separator;
+        String name = file.getFileName().toString();
+        BackupFileManager.createBackup(folder, folder, name, numberOfBackups, false);
+    }
+
+    private void patch(InputStream in, OutputStream out) throws XMLStreamException {
+        XMLEventFactory events = XMLEventFactory.newInstance();
+        XMLEventReader reader = createInputFactory().createXMLEventReader(in);
+        XMLEventWriter writer = XMLOutputFactory.newInstance().createXMLEventWriter(out, "UTF-8");
+
+        String dmdId = null;
+        String structMap = null;
+        int divDepth = 0;
+        boolean identifierWritten = false;
+
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                StartElement element = event.asStartElement();
+                QName name = element.getName();
+                if (METS_NS.equals(name.getNamespaceURI())) {
+                    switch (name.getLocalPart()) {
+                        case "dmdSec":
+                            dmdId = getAttribute(element, "ID");
+                            break;
+                        case "structMap":
+                            structMap = getAttribute(element, "TYPE");
+                            divDepth = 0;
+                            break;
+                        case "div":
+                            divDepth++;
+                            if ("PHYSICAL".equals(structMap)) {
+                                String id = getAttribute(element, "ID");
+                                String oid = divDepth == 1 && physicalId.equals(id) ? newMainOid : newPageOids.get(id);
+                                if (oid != null) {
+                                    event = setAttribute(events, element, new QName(CONTENTIDS), oid);
+                                }
+                            }
+                            break;
+                        case "FLocat":
+                            Attribute href = element.getAttributeByName(new QName(XLINK_NS, "href"));
+                            String newLocation = href == null ? null : relocations.get(ContentFileIndex.getFilename(href.getValue()));
+                            if (newLocation != null) {
+                                event = setAttribute(events, element, href.getName(), newLocation);
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                } else if (newMainOid != null && !identifierWritten && logicalDmdId.equals(dmdId) && "metadata".equals(name.getLocalPart())
+                        && IDENTIFIER.equals(getAttribute(element, "name"))) {
+                    // replace the value of the existing identifier
+                    writer.add(event);
+                    writer.add(events.createCharacters(newMainOid));
+                    while (!reader.peek().isEndElement()) {
+                        reader.nextEvent();
+                    }
+                    identifierWritten = true;
+                    continue;
+                }
+            } else if (event.isEndElement()) {
+                QName name = event.asEndElement().getName();
+                if (METS_NS.equals(name.getNamespaceURI())) {
+                    switch (name.getLocalPart()) {
+                        case "dmdSec":
+                            dmdId = null;
+                            break;
+                        case "structMap":
+                            structMap = null;
+                            break;
+                        case "div":
+                            divDepth--;
+                            break;
+                        default:
+                            break;
+                    }
+                } else if (newMainOid != null && !identifierWritten && logicalDmdId.equals(dmdId) && "goobi".equals(name.getLocalPart())) {
+                    // the main element has no identifier yet, add it to the goobi extension
+                    QName metadata = new QName(name.getNamespaceURI(), "metadata", name.getPrefix());
+                    writer.add(events.createStartElement(metadata, Collections.singletonList(events.createAttribute("name", IDENTIFIER)).iterator(),
+                            Collections.emptyIterator()));
+                    writer.add(events.createCharacters(newMainOid));
+                    writer.add(events.createEndElement(metadata, Collections.emptyIterator()));
+                    identifierWritten = true;
+                }
+            }
+            writer.add(event);
+            if (event.isStartDocument()) {
+                writer.add(events.createCharacters("\n"));
+            }
+        }
+        writer.flush();
+        writer.close();
+        reader.close();
+    }
+
+    private static String getAttribute(StartElement element, String name) {
+        Attribute attribute = element.getAttributeByName(new QName(name));
+        return attribute == null ? null : attribute.getValue();
+    }
+
+    private static StartElement setAttribute(XMLEventFactory events, StartElement element, QName name, String value) {
+        List<Attribute> attributes = new ArrayList<>();
+        boolean replaced = false;
+        for (Iterator<?> it = element.getAttributes(); it.hasNext();) {
+            Attribute attribute = (Attribute) it.next();
+            if (attribute.getName().getNamespaceURI().equals(name.getNamespaceURI())
+                    && attribute.getName().getLocalPart().equals(name.getLocalPart())) {
+                attributes.add(events.createAttribute(attribute.getName(), value));
+                replaced = true;
+            } else {
+                attributes.add(attribute);
+            }
+        }
+        if (!replaced) {
+            attributes.add(events.createAttribute(name, value));
+        }
+        return events.createStartElement(element.getName(), attributes.iterator(), element.getNamespaces());
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
@@ -0,0 +1,27 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Minimal access to an object storage like S3, where a file cannot be moved but must be copied and deleted
+ */
+interface ObjectStore {
+
+    /**
+     * Copy an object on the server, without transferring its content to the client
+     *
+     * @param source source object
+     * @param target target object
+     * @throws IOException
+     */
+    void copy(Path source, Path target) throws IOException;
+
+    /**
+     * Delete an object
+     *
+     * @param object object to delete
+     * @throws IOException
+     */
+    void delete(Path object) throws IOException;
+}
@@ -0,0 +1,201 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.goobi.beans.Step;
+import org.goobi.production.enums.PluginReturnValue;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Executes the OID creation for many processes at once, for example after a mass import.
+ *
+ * The METS files of all processes are opened in parallel first. Then the OIDs of all processes with the same request settings are requested together,
+ * so that a few large requests replace one request per process. Finally the OIDs are assigned, the files renamed and the METS files saved in
+ * parallel again.
+ *
+ * Each process is locked only while it is handled, other executions for the same process wait until its OIDs are assigned. The OIDs of a group
+ * are requested with an idempotency key derived from its processes and steps, so a repeated batch gets the same answer. Right after the request
+ * the OIDs of each process are stored in its journal, so a failed or interrupted execution reuses them.
+ *
+ * All METS files of a batch are kept in memory between these phases, so very large imports should be split into batches of a few hundred
+ * processes. The steps are not closed, the caller decides how to continue with each step based on the returned result.
+ */
+@Log4j2
+public class OidBatchRunner {
+
+    private final int workers;
+
+    /**
+     * Create a runner with the number of workers configured in <code>batchThreads</code>
+     */
+    public OidBatchRunner() {
+        this(OidConfiguration.getInstance(new OidStepPlugin().getTitle(), "", "").getBatchThreads());
+    }
+
+    /**
+     * Create a runner
+     *
+     * @param workers number of processes handled in parallel
+     */
+    public OidBatchRunner(int workers) {
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Create and assign the OIDs for all given steps
+     *
+     * @param steps steps of the processes to handle
+     * @return result for each process id
+     */
+    public Map<Integer, PluginReturnValue> run(List<Step> steps) {
+        // one execution per process
+        Map<Integer, Step> stepsByProcess = new LinkedHashMap<>();
+        for (Step step : steps) {
+            stepsByProcess.putIfAbsent(step.getProzess().getId(), step);
+        }
+        Map<Integer, PluginReturnValue> results = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, Math.max(1, stepsByProcess.size())));
+        try {
+            // open all METS files and count the missing OIDs. Each process is locked from its preparation until its OIDs are assigned, processes
+            // that are locked by another execution are handled on their own at the end.
+            Map<OidStepPlugin, Future<PluginReturnValue>> prepared = new LinkedHashMap<>();
+            List<OidStepPlugin> busy = new ArrayList<>();
+            for (Step step : stepsByProcess.values()) {
+                OidStepPlugin plugin = new OidStepPlugin();
+                plugin.initialize(step, "");
+                if (ProcessLocks.tryLock(step.getProzess().getId())) {
+                    prepared.put(plugin, executor.submit(plugin::prepare));
+                } else {
+                    busy.add(plugin);
+                }
+            }
+
+            // group the processes by the settings of the OID request
+            Map<List<Object>, List<OidStepPlugin>> groups = new LinkedHashMap<>();
+            for (Map.Entry<OidStepPlugin, Future<PluginReturnValue>> entry : prepared.entrySet()) {
+                OidStepPlugin plugin = entry.getKey();
+                PluginReturnValue result = getResult(entry.getValue());
+                if (result != null) {
+                    results.put(plugin.process.getId(), result);
+                    ProcessLocks.unlock(plugin.process.getId());
+                } else {
+                    groups.computeIfAbsent(plugin.getConfig().getRequestSettings(), k -> new ArrayList<>()).add(plugin);
+                }
+            }
+
+            // request the OIDs for each group at once and assign them in parallel
+            Map<OidStepPlugin, Future<PluginReturnValue>> completed = new LinkedHashMap<>();
+            for (List<OidStepPlugin> group : groups.values()) {
+                // OIDs allocated by an interrupted execution are reused
+                List<OidStepPlugin> requesting = new ArrayList<>();
+                int total = 0;
+                for (OidStepPlugin plugin : group) {
+                    long[] allocated = plugin.getAllocatedOids();
+                    if (allocated != null) {
+                        completed.put(plugin, executor.submit(() -> completeLocked(plugin, allocated)));
+                    } else {
+                        requesting.add(plugin);
+                        total += plugin.getNumberOfNewOids();
+                    }
+                }
+                long[] oids;
+                try {
+                    oids = total > 0 ? requesting.get(0).getOidSource(getRequestKey(requesting, total)).getOids(total) : new long[0];
+                } catch (IOException e) {
+                    log.error("Cannot request {} OIDs for {} processes", total, requesting.size(), e);
+                    for (OidStepPlugin plugin : requesting) {
+                        results.put(plugin.process.getId(), plugin.failRequest(e));
+                        ProcessLocks.unlock(plugin.process.getId());
+                    }
+                    continue;
+                }
+                // store all slices before any of them is assigned
+                int offset = 0;
+                Map<OidStepPlugin, long[]> slices = new LinkedHashMap<>();
+                for (OidStepPlugin plugin : requesting) {
+                    long[] slice = Arrays.copyOfRange(oids, offset, offset + plugin.getNumberOfNewOids());
+                    offset += slice.length;
+                    PluginReturnValue result = plugin.storeAllocatedOids(slice);
+                    if (result != null) {
+                        results.put(plugin.process.getId(), result);
+                        ProcessLocks.unlock(plugin.process.getId());
+                    } else {
+                        slices.put(plugin, slice);
+                    }
+                }
+                for (Map.Entry<OidStepPlugin, long[]> entry : slices.entrySet()) {
+                    completed.put(entry.getKey(), executor.submit(() -> completeLocked(entry.getKey(), entry.getValue())));
+                }
+            }
+
+            // the locked processes wait for the other execution, after all processes of the batch are submitted
+            for (OidStepPlugin plugin : busy) {
+                completed.put(plugin, executor.submit(plugin::runSynchronously));
+            }
+            for (Map.Entry<OidStepPlugin, Future<PluginReturnValue>> entry : completed.entrySet()) {
+                results.put(entry.getKey().process.getId(), getResult(entry.getValue()));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * Get the idempotency key for the OIDs of a group. The key only depends on the processes, their steps and the number of OIDs, so a repeated
+     * batch for the same processes gets the OIDs of the first request.
+     *
+     * @param group processes of the request
+     * @param total number of requested OIDs
+     * @return key
+     */
+    static String getRequestKey(List<OidStepPlugin> group, int total) {
+        List<String> ids = new ArrayList<>(group.size());
+        for (OidStepPlugin plugin : group) {
+            ids.add(plugin.process.getId() + "-" + plugin.getStep().getId());
+        }
+        Collections.sort(ids);
+        String content = String.join(",", ids) + ":" + total;
+        return "batch-" + UUID.nameUUIDFromBytes(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Assign the OIDs to a prepared process and release its lock
+     *
+     * @param plugin prepared plugin
+     * @param oids OIDs for the process, already stored in its journal
+     * @return result of the execution
+     */
+    private static PluginReturnValue completeLocked(OidStepPlugin plugin, long[] oids) {
+        try {
+            return plugin.complete(oids);
+        } finally {
+            ProcessLocks.unlock(plugin.process.getId());
+        }
+    }
+
+    private static PluginReturnValue getResult(Future<PluginReturnValue> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error(e);
+        }
+        return PluginReturnValue.ERROR;
+    }
+}
@@ -0,0 +1,291 @@
+package de.intranda.goobi.plugins;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.goobi.beans.Step;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Immutable, typed snapshot of the plugin configuration.
+ *
+ * The configuration file is parsed only once and cached until its modification date changes. Values on the top level of the file are the
+ * defaults. They can be overwritten for single projects or steps in sections like
+ *
+ * <pre>
+ * &lt;config project="Archive" step="*"&gt;
+ *     &lt;url&gt;https://archive.example.com/management/api/oid/new/&lt;/url&gt;
+ * &lt;/config&gt;
+ * </pre>
+ *
+ * Each value is taken from the most specific section that contains it: project and step match, then project only, then step only, then a section
+ * with two wildcards, then the top level. A section for a single step therefore only changes the values it contains.
+ */
+@Log4j2
+@Getter
+class OidConfiguration {
+
+    private static final Map<String, CachedFile> CACHE = new ConcurrentHashMap<>();
+
+    private final String url;
+    private final List<String> urls;
+    private final String username;
+    private final String password;
+    private final String headerParam;
+    private final String headerValue;
+    private final int chunkSize;
+
+    private final int renameThreads;
+    private final int batchThreads;
+    private final boolean streamingMets;
+    private final boolean deferRenames;
+
+    private final List<String> renameFolders;
+    private final List<String> validateFolders;
+    private final List<String> skipFolders;
+
+    private final boolean checksumsEnabled;
+    private final List<String> checksumAlgorithms;
+
+    private final int s3CopyThreads;
+    private final int s3BatchSize;
+
+    private final int httpMaxConnections;
+    private final int httpMaxConnectionsPerRoute;
+    private final int httpKeepAlive;
+    private final int httpConnectTimeout;
+    private final int httpSocketTimeout;
+
+    private final int retryAttempts;
+    private final int retryInitialDelay;
+    private final int retryMaxDelay;
+    private final boolean hedgingEnabled;
+    private final int hedgingPercentile;
+    private final int circuitBreakerFailureThreshold;
+    private final int circuitBreakerOpenDuration;
+
+    private final int limitRequestsPerSecond;
+    private final int limitRequestBurst;
+    private final int limitRenameJobs;
+
+    private final boolean asyncEnabled;
+    private final int asyncThreads;
+    private final int asyncQueueSize;
+
+    private final boolean reservoirEnabled;
+    private final Path reservoirFile;
+    private final int reservoirLowWaterMark;
+    private final int reservoirRefillSize;
+
+    private OidConfiguration(Section c) {
+        urls = c.getStringList("url", "http://example.com");
+        url = urls.get(0);
+        username = c.getString("username", null);
+        password = c.getString("password", null);
+        headerParam = c.getString("headerparam", "Accept");
+        headerValue = c.getString("headerValue", "application/json");
+        chunkSize = c.getInt("chunkSize", 1000);
+
+        renameThreads = c.getInt("renameThreads", 4);
+        batchThreads = c.getInt("batchThreads", 4);
+        streamingMets = c.getBoolean("streamingMets", false);
+        deferRenames = c.getBoolean("deferRenames", false);
+
+        renameFolders = c.getStringList("folders.rename", "images/*", "ocr/*");
+        validateFolders = c.getStringList("folders.validate");
+        skipFolders = c.getStringList("folders.skip");
+
+        checksumsEnabled = c.getBoolean("checksums[@enabled]", false);
+        checksumAlgorithms = c.getStringList("checksums.algorithm", "SHA-256");
+
+        s3CopyThreads = c.getInt("s3.copyThreads", 16);
+        s3BatchSize = c.getInt("s3.batchSize", 1000);
+
+        httpMaxConnections = c.getInt("http.maxConnections", 20);
+        httpMaxConnectionsPerRoute = c.getInt("http.maxConnectionsPerRoute", 10);
+        httpKeepAlive = c.getInt("http.keepAlive", 30);
+        httpConnectTimeout = c.getInt("http.connectTimeout", 10);
+        httpSocketTimeout = c.getInt("http.socketTimeout", 60);
+
+        retryAttempts = c.getInt("retry.attempts", 3);
+        retryInitialDelay = c.getInt("retry.initialDelay", 500);
+        retryMaxDelay = c.getInt("retry.maxDelay", 10000);
+        hedgingEnabled = c.getBoolean("hedging[@enabled]", false);
+        hedgingPercentile = c.getInt("hedging.percentile", 95);
+        circuitBreakerFailureThreshold = c.getInt("circuitBreaker.failureThreshold", 5);
+        circuitBreakerOpenDuration = c.getInt("circuitBreaker.openDuration", 30);
+
+        limitRequestsPerSecond = c.getInt("limits.requestsPerSecond", 0);
+        limitRequestBurst = c.getInt("limits.requestBurst", 10);
+        limitRenameJobs = c.getInt("limits.renameJobs", 0);
+
+        asyncEnabled = c.getBoolean("async[@enabled]", false);
+        asyncThreads = c.getInt("async.threads", 8);
+        asyncQueueSize = c.getInt("async.queueSize", 500);
+
+        reservoirEnabled = c.getBoolean("reservoir[@enabled]", false);
+        reservoirFile = Paths.get(c.getString("reservoir.file", "/opt/digiverso/goobi/tmp/oid_reservoir.dat"));
+        reservoirLowWaterMark = c.getInt("reservoir.lowWaterMark", 1000);
+        reservoirRefillSize = c.getInt("reservoir.refillSize", 5000);
+    }
+
+    /**
+     * Get all settings that change how new OIDs are requested. Executions with equal settings can share a request.
+     *
+     * @return values of the settings
+     */
+    List<Object> getRequestSettings() {
+        return Arrays.asList(urls, username, password, headerParam, headerValue, chunkSize, httpMaxConnections, httpMaxConnectionsPerRoute,
+                httpKeepAlive, httpConnectTimeout, httpSocketTimeout, retryAttempts, retryInitialDelay, retryMaxDelay, hedgingEnabled,
+                hedgingPercentile, circuitBreakerFailureThreshold, circuitBreakerOpenDuration, limitRequestsPerSecond, limitRequestBurst,
+                reservoirEnabled, reservoirFile, reservoirLowWaterMark, reservoirRefillSize);
+    }
+
+    /**
+     * Get the configuration for the project and the step
+     *
+     * @param pluginName name of the plugin
+     * @param step current step
+     * @return configuration snapshot
+     */
+    static OidConfiguration getInstance(String pluginName, Step step) {
+        String projectName = step.getProzess().getProjekt() == null ? "" : step.getProzess().getProjekt().getTitel();
+        return getInstance(pluginName, projectName, step.getTitel());
+    }
+
+    /**
+     * Get the configuration for a project and step name
+     *
+     * @param pluginName name of the plugin
+     * @param projectName name of the project
+     * @param stepName name of the step
+     * @return configuration snapshot
+     */
+    static OidConfiguration getInstance(String pluginName, String projectName, String stepName) {
+        Path file = Paths.get(ConfigurationHelper.getInstance().getConfigurationFolder(), "plugin_" + pluginName + ".xml");
+        long lastModified = getLastModified(file);
+        CachedFile cached = CACHE.get(pluginName);
+        if (cached == null || cached.lastModified != lastModified) {
+            cached = new CachedFile(file, lastModified);
+            CACHE.put(pluginName, cached);
+        }
+        return cached.getConfiguration(projectName, stepName);
+    }
+
+    private static long getLastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parsed configuration file with the snapshots of all projects and steps that were requested so far
+     */
+    private static class CachedFile {
+
+        private final long lastModified;
+
+        private final XMLConfiguration xml = new XMLConfiguration();
+
+        // project + step -> snapshot
+        private final Map<String, OidConfiguration> snapshots = new ConcurrentHashMap<>();
+
+        CachedFile(Path file, long lastModified) {
+            this.lastModified = lastModified;
+            xml.setDelimiterParsingDisabled(true);
+            try {
+                xml.load(file.toFile());
+                log.debug("Loaded configuration {}", file);
+            } catch (ConfigurationException e) {
+                log.error("Cannot read configuration {}", file, e);
+            }
+        }
+
+        OidConfiguration getConfiguration(String projectName, String stepName) {
+            return snapshots.computeIfAbsent(projectName + "\t" + stepName, k -> new OidConfiguration(new Section(findSections(projectName, stepName))));
+        }
+
+        /**
+         * Find all sections for the project and step
+         *
+         * @return matching sections, the most specific first and the top level of the file last
+         */
+        private List<HierarchicalConfiguration> findSections(String projectName, String stepName) {
+            List<List<HierarchicalConfiguration>> byScore = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                byScore.add(new ArrayList<>());
+            }
+            for (HierarchicalConfiguration section : xml.configurationsAt("config")) {
+                String project = section.getString("[@project]", "*");
+                String step = section.getString("[@step]", "*");
+                boolean projectMatches = project.equals(projectName);
+                boolean stepMatches = step.equals(stepName);
+                if ((projectMatches || "*".equals(project)) && (stepMatches || "*".equals(step))) {
+                    byScore.get((projectMatches ? 2 : 0) + (stepMatches ? 1 : 0)).add(section);
+                }
+            }
+            List<HierarchicalConfiguration> sections = new ArrayList<>();
+            for (int score = 3; score >= 0; score--) {
+                sections.addAll(byScore.get(score));
+            }
+            sections.add(xml);
+            return sections;
+        }
+    }
+
+    /**
+     * Read access to the matching sections, each value is read from the first section that contains it
+     */
+    private static class Section {
+
+        private final List<HierarchicalConfiguration> sections;
+
+        Section(List<HierarchicalConfiguration> sections) {
+            this.sections = sections;
+        }
+
+        private HierarchicalConfiguration get(String key) {
+            for (HierarchicalConfiguration section : sections) {
+                if (section.containsKey(key)) {
+                    return section;
+                }
+            }
+            // the top level of the file returns the default value
+            return sections.get(sections.size() - 1);
+        }
+
+        String getString(String key, String defaultValue) {
+            return get(key).getString(key, defaultValue);
+        }
+
+        int getInt(String key, int defaultValue) {
+            return get(key).getInt(key, defaultValue);
+        }
+
+        boolean getBoolean(String key, boolean defaultValue) {
+            return get(key).getBoolean(key, defaultValue);
+        }
+
+        List<String> getStringList(String key, String... defaultValues) {
+            List<String> values = new ArrayList<>();
+            for (Object value : get(key).getList(key)) {
+                values.add(String.valueOf(value).trim());
+            }
+            return values.isEmpty() ? Arrays.asList(defaultValues) : values;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package de.intranda.goobi.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Plugin wide HTTP client for the OID API. All plugin instances share one connection pool, so open connections are kept alive and reused between
+ * step executions instead of doing a new TCP and TLS handshake for every request.
+ *
+ * The pool size, keep alive and timeouts are taken from the plugin configuration and can be changed at runtime without replacing the client.
+ */
+final class OidHttpClient {
+
+    private static final PoolingHttpClientConnectionManager CONNECTION_MANAGER = new PoolingHttpClientConnectionManager();
+
+    private static volatile long keepAliveMillis = TimeUnit.SECONDS.toMillis(30);
+
+    private static volatile RequestConfig requestConfig = createRequestConfig(10, 60);
+
+    private static final CloseableHttpClient CLIENT;
+
+    static {
+        CONNECTION_MANAGER.setMaxTotal(20);
+        CONNECTION_MANAGER.setDefaultMaxPerRoute(10);
+
+        // use the keep alive header of the server, but never keep a connection longer than configured
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMillis) : keepAliveMillis;
+        };
+
+        CLIENT = HttpClients.custom()
+                .setConnectionManager(CONNECTION_MANAGER)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .evictExpiredConnections()
+                .build();
+    }
+
+    private OidHttpClient() {
+    }
+
+    /**
+     * Apply the connection settings of the plugin configuration
+     *
+     * @param maxConnections maximum number of open connections
+     * @param maxConnectionsPerRoute maximum number of open connections to a single host
+     * @param keepAlive time in seconds an idle connection is kept open
+     * @param connectTimeout timeout in seconds to establish a connection
+     * @param socketTimeout timeout in seconds to wait for data
+     */
+    static void configure(int maxConnections, int maxConnectionsPerRoute, int keepAlive, int connectTimeout, int socketTimeout) {
+        if (CONNECTION_MANAGER.getMaxTotal() != maxConnections) {
+            CONNECTION_MANAGER.setMaxTotal(maxConnections);
+        }
+        if (CONNECTION_MANAGER.getDefaultMaxPerRoute() != maxConnectionsPerRoute) {
+            CONNECTION_MANAGER.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        }
+        keepAliveMillis = TimeUnit.SECONDS.toMillis(keepAlive);
+        RequestConfig current = requestConfig;
+        if (current.getConnectTimeout() != connectTimeout * 1000 || current.getSocketTimeout() != socketTimeout * 1000) {
+            requestConfig = createRequestConfig(connectTimeout, socketTimeout);
+        }
+    }
+
+    static CloseableHttpClient getClient() {
+        return CLIENT;
+    }
+
+    static RequestConfig getRequestConfig() {
+        return requestConfig;
+    }
+
+    private static RequestConfig createRequestConfig(int connectTimeout, int socketTimeout) {
+        return RequestConfig.custom()
+                .setConnectTimeout(connectTimeout * 1000)
+                .setConnectionRequestTimeout(connectTimeout * 1000)
+                .setSocketTimeout(socketTimeout * 1000)
+                .build();
+    }
+}
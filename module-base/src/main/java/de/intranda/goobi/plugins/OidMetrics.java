@@ -0,0 +1,291 @@
+package de.intranda.goobi.plugins;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Plugin wide metrics of all executions. The metrics are registered as MBean <code>de.intranda.goobi.plugins:type=OidStepPlugin</code> and can be
+ * read with any JMX client or exporter.
+ */
+@Log4j2
+final class OidMetrics implements OidMetricsMBean {
+
+    private static final OidMetrics INSTANCE = new OidMetrics();
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder oidsRequested = new LongAdder();
+    private final LongAdder oidsUsed = new LongAdder();
+    private final LongAdder oidsWasted = new LongAdder();
+    private final LongAdder filesRenamed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private final Timer[] timers = new Timer[Phase.values().length];
+
+    // waiting times caused by the AdmissionControl
+    private final Timer requestWait = new Timer();
+    private final Timer renameWait = new Timer();
+
+    static {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("de.intranda.goobi.plugins:type=OidStepPlugin");
+            try {
+                server.registerMBean(INSTANCE, name);
+            } catch (InstanceAlreadyExistsException e) {
+                // the plugin was loaded again, replace the metrics of the old class loader
+                server.unregisterMBean(name);
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException e) {
+            log.error("Cannot register OID metrics", e);
+        }
+    }
+
+    private OidMetrics() {
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new Timer();
+        }
+    }
+
+    static OidMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Add the metrics of a finished execution
+     *
+     * @param metrics metrics of the execution
+     */
+    void record(ExecutionMetrics metrics) {
+        executions.increment();
+        oidsRequested.add(metrics.getOidsRequested());
+        oidsUsed.add(metrics.getOidsUsed());
+        oidsWasted.add(metrics.getOidsWasted());
+        filesRenamed.add(metrics.getFilesRenamed());
+        failures.add(metrics.getFailures());
+        for (Phase phase : Phase.values()) {
+            long duration = metrics.getDuration(phase);
+            if (duration > 0) {
+                timers[phase.ordinal()].record(duration);
+            }
+        }
+    }
+
+    /**
+     * Record OIDs that were returned by the API but never assigned, for example the response of a hedged request that was not used
+     *
+     * @param count number of OIDs
+     */
+    void recordWastedOids(int count) {
+        oidsWasted.add(count);
+    }
+
+    /**
+     * Record the time a request to the OID API waited for the rate limit
+     *
+     * @param nanos waiting time in nanoseconds
+     */
+    void recordRequestWait(long nanos) {
+        requestWait.record(nanos);
+    }
+
+    /**
+     * Record the time an execution waited for a permit to rename its files
+     *
+     * @param nanos waiting time in nanoseconds
+     */
+    void recordRenameWait(long nanos) {
+        renameWait.record(nanos);
+    }
+
+    private Timer timer(Phase phase) {
+        return timers[phase.ordinal()];
+    }
+
+    @Override
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    @Override
+    public long getOidsRequested() {
+        return oidsRequested.sum();
+    }
+
+    @Override
+    public long getOidsUsed() {
+        return oidsUsed.sum();
+    }
+
+    @Override
+    public long getOidsWasted() {
+        return oidsWasted.sum();
+    }
+
+    @Override
+    public long getFilesRenamed() {
+        return filesRenamed.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getConfigLoadCount() {
+        return timer(Phase.CONFIG_LOAD).getCount();
+    }
+
+    @Override
+    public long getConfigLoadTotalTime() {
+        return timer(Phase.CONFIG_LOAD).getTotalTime();
+    }
+
+    @Override
+    public long getConfigLoadMaxTime() {
+        return timer(Phase.CONFIG_LOAD).getMaxTime();
+    }
+
+    @Override
+    public long getReadMetsCount() {
+        return timer(Phase.READ_METS).getCount();
+    }
+
+    @Override
+    public long getReadMetsTotalTime() {
+        return timer(Phase.READ_METS).getTotalTime();
+    }
+
+    @Override
+    public long getReadMetsMaxTime() {
+        return timer(Phase.READ_METS).getMaxTime();
+    }
+
+    @Override
+    public long getOidRequestCount() {
+        return timer(Phase.OID_REQUEST).getCount();
+    }
+
+    @Override
+    public long getOidRequestTotalTime() {
+        return timer(Phase.OID_REQUEST).getTotalTime();
+    }
+
+    @Override
+    public long getOidRequestMaxTime() {
+        return timer(Phase.OID_REQUEST).getMaxTime();
+    }
+
+    @Override
+    public long getRenamePlanningCount() {
+        return timer(Phase.RENAME_PLANNING).getCount();
+    }
+
+    @Override
+    public long getRenamePlanningTotalTime() {
+        return timer(Phase.RENAME_PLANNING).getTotalTime();
+    }
+
+    @Override
+    public long getRenamePlanningMaxTime() {
+        return timer(Phase.RENAME_PLANNING).getMaxTime();
+    }
+
+    @Override
+    public long getRenameExecutionCount() {
+        return timer(Phase.RENAME_EXECUTION).getCount();
+    }
+
+    @Override
+    public long getRenameExecutionTotalTime() {
+        return timer(Phase.RENAME_EXECUTION).getTotalTime();
+    }
+
+    @Override
+    public long getRenameExecutionMaxTime() {
+        return timer(Phase.RENAME_EXECUTION).getMaxTime();
+    }
+
+    @Override
+    public long getWriteMetsCount() {
+        return timer(Phase.WRITE_METS).getCount();
+    }
+
+    @Override
+    public long getWriteMetsTotalTime() {
+        return timer(Phase.WRITE_METS).getTotalTime();
+    }
+
+    @Override
+    public long getWriteMetsMaxTime() {
+        return timer(Phase.WRITE_METS).getMaxTime();
+    }
+
+    @Override
+    public long getRequestWaitCount() {
+        return requestWait.getCount();
+    }
+
+    @Override
+    public long getRequestWaitTotalTime() {
+        return requestWait.getTotalTime();
+    }
+
+    @Override
+    public long getRequestWaitMaxTime() {
+        return requestWait.getMaxTime();
+    }
+
+    @Override
+    public long getRenameWaitCount() {
+        return renameWait.getCount();
+    }
+
+    @Override
+    public long getRenameWaitTotalTime() {
+        return renameWait.getTotalTime();
+    }
+
+    @Override
+    public long getRenameWaitMaxTime() {
+        return renameWait.getMaxTime();
+    }
+
+    /**
+     * Number, total and maximum duration of the measurements of a phase
+     */
+    private static class Timer {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            count.increment();
+            total.add(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        long getCount() {
+            return count.sum();
+        }
+
+        long getTotalTime() {
+            return TimeUnit.NANOSECONDS.toMillis(total.sum());
+        }
+
+        long getMaxTime() {
+            return TimeUnit.NANOSECONDS.toMillis(max.get());
+        }
+    }
+}
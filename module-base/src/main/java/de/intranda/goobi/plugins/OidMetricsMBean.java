@@ -0,0 +1,67 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * JMX view of the metrics of the plugin. All times are in milliseconds.
+ */
+public interface OidMetricsMBean {
+
+    long getExecutions();
+
+    long getOidsRequested();
+
+    long getOidsUsed();
+
+    long getOidsWasted();
+
+    long getFilesRenamed();
+
+    long getFailures();
+
+    long getConfigLoadCount();
+
+    long getConfigLoadTotalTime();
+
+    long getConfigLoadMaxTime();
+
+    long getReadMetsCount();
+
+    long getReadMetsTotalTime();
+
+    long getReadMetsMaxTime();
+
+    long getOidRequestCount();
+
+    long getOidRequestTotalTime();
+
+    long getOidRequestMaxTime();
+
+    long getRenamePlanningCount();
+
+    long getRenamePlanningTotalTime();
+
+    long getRenamePlanningMaxTime();
+
+    long getRenameExecutionCount();
+
+    long getRenameExecutionTotalTime();
+
+    long getRenameExecutionMaxTime();
+
+    long getWriteMetsCount();
+
+    long getWriteMetsTotalTime();
+
+    long getWriteMetsMaxTime();
+
+    long getRequestWaitCount();
+
+    long getRequestWaitTotalTime();
+
+    long getRequestWaitMaxTime();
+
+    long getRenameWaitCount();
+
+    long getRenameWaitTotalTime();
+
+    long getRenameWaitMaxTime();
+}
@@ -0,0 +1,204 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Persistent pool of pre-fetched OIDs. The OIDs are stored in a file, so that they survive a restart. Whenever the number of available OIDs drops
+ * below the low water mark, new OIDs are requested from the OID API in the background.
+ *
+ * Taking OIDs from the pool is atomic: the file is locked for other threads and other JVMs, and the remaining OIDs are written into a temporary
+ * file that replaces the pool file. An OID is therefore handed out at most once, even if the server stops in the middle of an operation.
+ *
+ * If the pool does not contain enough OIDs for a request, the OIDs are requested directly from the API.
+ */
+@Log4j2
+class OidReservoir implements OidSource {
+
+    // one reservoir per pool file
+    private static final Map<Path, OidReservoir> RESERVOIRS = new ConcurrentHashMap<>();
+
+    private static final ExecutorService REFILL_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "oid-reservoir-refill");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final Path file;
+
+    private final Path lockFile;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final AtomicBoolean refillRunning = new AtomicBoolean();
+
+    private volatile OidSource delegate;
+
+    private volatile int lowWaterMark;
+
+    private volatile int refillSize;
+
+    private OidReservoir(Path file) {
+        this.file = file;
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+    }
+
+    /**
+     * Get the reservoir for the given pool file. The settings are updated on every call, so changes in the configuration are used immediately.
+     *
+     * @param file pool file
+     * @param lowWaterMark minimum number of OIDs in the pool, a refill is started if less OIDs are available
+     * @param refillSize number of OIDs requested by a single refill
+     * @param delegate source used to refill the pool
+     * @return reservoir
+     */
+    static OidReservoir getInstance(Path file, int lowWaterMark, int refillSize, OidSource delegate) {
+        OidReservoir reservoir = RESERVOIRS.computeIfAbsent(file.toAbsolutePath().normalize(), OidReservoir::new);
+        reservoir.lowWaterMark = lowWaterMark;
+        reservoir.refillSize = Math.max(refillSize, 1);
+        reservoir.delegate = delegate;
+        return reservoir;
+    }
+
+    @Override
+    public long[] getOids(int count) throws IOException {
+        long[] oids = take(count);
+        if (oids == null) {
+            log.info("OID reservoir {} contains less than {} OIDs, request them directly", file, count);
+            refill();
+            return delegate.getOids(count);
+        }
+        return oids;
+    }
+
+    /**
+     * Take OIDs from the pool
+     *
+     * @param count number of OIDs
+     * @return the OIDs or null, if the pool does not contain enough OIDs
+     * @throws IOException
+     */
+    long[] take(int count) throws IOException {
+        long[] taken = null;
+        int remaining;
+        lock.lock();
+        try (FileChannel channel = openLockFile(); FileLock fileLock = channel.lock()) {
+            long[] available = read();
+            if (available.length >= count) {
+                taken = Arrays.copyOf(available, count);
+                write(Arrays.copyOfRange(available, count, available.length));
+                remaining = available.length - count;
+            } else {
+                remaining = available.length;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (remaining < lowWaterMark) {
+            refill();
+        }
+        return taken;
+    }
+
+    /**
+     * Get the number of OIDs in the pool
+     *
+     * @return number of available OIDs
+     * @throws IOException
+     */
+    int size() throws IOException {
+        lock.lock();
+        try {
+            return read().length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Start a refill in the background, if no refill is running yet
+     */
+    void refill() {
+        if (refillRunning.compareAndSet(false, true)) {
+            REFILL_EXECUTOR.execute(() -> {
+                try {
+                    // the request is done without holding the lock, so other steps can still take OIDs
+                    long[] oids = delegate.getOids(refillSize);
+                    add(oids);
+                } catch (IOException | RuntimeException e) {
+                    log.error("Cannot refill OID reservoir {}", file, e);
+                } finally {
+                    refillRunning.set(false);
+                }
+            });
+        }
+    }
+
+    private void add(long[] oids) throws IOException {
+        lock.lock();
+        try (FileChannel channel = openLockFile(); FileLock fileLock = channel.lock()) {
+            long[] available = read();
+            long[] combined = Arrays.copyOf(available, available.length + oids.length);
+            System.arraycopy(oids, 0, combined, available.length, oids.length);
+            write(combined);
+            log.debug("Added {} OIDs to reservoir {}, {} OIDs available", oids.length, file, combined.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private FileChannel openLockFile() throws IOException {
+        if (lockFile.getParent() != null) {
+            Files.createDirectories(lockFile.getParent());
+        }
+        return FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    private long[] read() throws IOException {
+        if (!Files.exists(file)) {
+            return new long[0];
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int count = in.readInt();
+            long[] oids = new long[count];
+            for (int i = 0; i < count; i++) {
+                oids[i] = in.readLong();
+            }
+            return oids;
+        }
+    }
+
+    private void write(long[] oids) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            out.writeInt(oids.length);
+            for (long oid : oids) {
+                out.writeLong(oid);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
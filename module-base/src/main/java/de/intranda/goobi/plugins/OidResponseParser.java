@@ -0,0 +1,119 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Streaming parser for the response of the OID API. The OIDs are read token by token and written directly into a primitive array, no JSON tree is
+ * created.
+ *
+ * <pre>
+ * {"oids":[300006252,300006253,300006254]}
+ * </pre>
+ *
+ * Services that hand out contiguous blocks can send ranges instead of single OIDs. Each range is expanded into the array, so a response for
+ * thousands of OIDs consists of a few tokens only:
+ *
+ * <pre>
+ * {"ranges":[{"start":300006252,"count":3}]}
+ * </pre>
+ */
+final class OidResponseParser {
+
+    private OidResponseParser() {
+    }
+
+    /**
+     * Read the OIDs of a response into the target array
+     *
+     * @param response response of the API
+     * @param target array to fill
+     * @param offset first position to fill
+     * @param count number of expected OIDs
+     * @return number of OIDs written into the array, additional OIDs in the response are ignored
+     * @throws IOException if the response is not a valid OID response
+     */
+    static int parse(Reader response, long[] target, int offset, int count) throws IOException {
+        int read = 0;
+        boolean found = false;
+        try (JsonReader reader = new JsonReader(response)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("oids".equals(name)) {
+                    found = true;
+                    read = readOids(reader, target, offset + read, count - read) + read;
+                } else if ("ranges".equals(name)) {
+                    found = true;
+                    read = readRanges(reader, target, offset + read, count - read) + read;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            // thrown by the reader for unexpected tokens
+            throw new IOException("Invalid OID response: " + e.getMessage(), e);
+        }
+        if (!found) {
+            throw new IOException("Invalid OID response: field 'oids' or 'ranges' is missing");
+        }
+        return read;
+    }
+
+    private static int readOids(JsonReader reader, long[] target, int offset, int count) throws IOException {
+        int read = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (read < count) {
+                target[offset + read] = readOid(reader);
+                read++;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+        return read;
+    }
+
+    private static int readRanges(JsonReader reader, long[] target, int offset, int count) throws IOException {
+        int read = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            long start = -1;
+            long size = -1;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("start".equals(name)) {
+                    start = readOid(reader);
+                } else if ("count".equals(name)) {
+                    size = readOid(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (start < 0 || size < 0) {
+                throw new IOException("Invalid OID response: range without 'start' or 'count'");
+            }
+            for (long i = 0; i < size && read < count; i++) {
+                target[offset + read] = start + i;
+                read++;
+            }
+        }
+        reader.endArray();
+        return read;
+    }
+
+    private static long readOid(JsonReader reader) throws IOException {
+        // some services send the OIDs as strings
+        if (reader.peek() == JsonToken.STRING) {
+            return Long.parseLong(reader.nextString());
+        }
+        return reader.nextLong();
+    }
+}
@@ -0,0 +1,18 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+
+/**
+ * Provider of new object identifiers
+ */
+interface OidSource {
+
+    /**
+     * Get new, unused OIDs
+     *
+     * @param count number of requested OIDs
+     * @return array with exactly the requested number of OIDs
+     * @throws IOException if the OIDs cannot be retrieved
+     */
+    long[] getOids(int count) throws IOException;
+}
@@ -0,0 +1,118 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * State of a process after all OIDs were assigned. The state is written into the process folder together with size, modification date and
+ * checksum of the METS file. As long as the METS file is unchanged, a new execution of the step can finish without opening the METS file.
+ *
+ * The first line contains the fingerprint of the METS file, followed by the assigned OIDs:
+ *
+ * <pre>
+ * mets   size   modification date   CRC32
+ * main   OID
+ * pages  number of pages
+ * page   OID
+ * </pre>
+ */
+@Log4j2
+final class OidState {
+
+    static final String FILENAME = "oid_state.txt";
+
+    private static final String SEPARATOR = "\t";
+
+    private OidState() {
+    }
+
+    /**
+     * Check if the METS file was changed since the state was written. Only the first line of the state is read. The checksum is calculated only if
+     * the size is unchanged but the modification date differs, for example after the file was copied.
+     *
+     * @param processFolder process data directory
+     * @param metsFile METS file of the process
+     * @return true, if a state exists and the METS file is unchanged
+     */
+    static boolean isUnchanged(Path processFolder, Path metsFile) {
+        Path file = processFolder.resolve(FILENAME);
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null) {
+                return false;
+            }
+            String[] parts = line.split(SEPARATOR);
+            if (parts.length != 4 || !"mets".equals(parts[0])) {
+                return false;
+            }
+            BasicFileAttributes attributes = Files.readAttributes(metsFile, BasicFileAttributes.class);
+            if (attributes.size() != Long.parseLong(parts[1])) {
+                return false;
+            }
+            if (attributes.lastModifiedTime().toMillis() == Long.parseLong(parts[2])) {
+                return true;
+            }
+            return getChecksum(metsFile) == Long.parseLong(parts[3]);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot read OID state {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Write the state after all OIDs were assigned and the METS file was saved
+     *
+     * @param processFolder process data directory
+     * @param metsFile METS file of the process
+     * @param mainOid OID of the main element
+     * @param pageOids OIDs of all pages
+     * @throws IOException
+     */
+    static void write(Path processFolder, Path metsFile, String mainOid, List<String> pageOids) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(metsFile, BasicFileAttributes.class);
+        long checksum = getChecksum(metsFile);
+        Path file = processFolder.resolve(FILENAME);
+        Path tmp = processFolder.resolve(FILENAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write("mets" + SEPARATOR + attributes.size() + SEPARATOR + attributes.lastModifiedTime().toMillis() + SEPARATOR + checksum);
+            writer.newLine();
+            if (mainOid != null) {
+                writer.write("main" + SEPARATOR + mainOid);
+                writer.newLine();
+            }
+            writer.write("pages" + SEPARATOR + pageOids.size());
+            writer.newLine();
+            for (String oid : pageOids) {
+                writer.write("page" + SEPARATOR + oid);
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long getChecksum(Path metsFile) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[65536];
+        try (InputStream in = new CheckedInputStream(Files.newInputStream(metsFile), crc)) {
+            while (in.read(buffer) != -1) {
+                // only the checksum is needed
+            }
+        }
+        return crc.getValue();
+    }
+}
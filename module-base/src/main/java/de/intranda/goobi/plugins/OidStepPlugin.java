@@ -1,25 +1,26 @@
 package de.intranda.goobi.plugins;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.configuration.XMLConfiguration;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.HttpClients;
 import org.goobi.beans.Process;
 import org.goobi.beans.Step;
+import org.goobi.production.cli.helper.StringPair;
 import org.goobi.production.enums.LogType;
 import org.goobi.production.enums.PluginGuiType;
 import org.goobi.production.enums.PluginReturnValue;
@@ -27,20 +28,15 @@ import org.goobi.production.enums.PluginType;
 import org.goobi.production.enums.StepReturnValue;
 import org.goobi.production.plugin.interfaces.IStepPluginVersion2;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-
-import de.sub.goobi.config.ConfigPlugins;
+import de.sub.goobi.config.ConfigurationHelper;
 import de.sub.goobi.helper.Helper;
-import de.sub.goobi.helper.StorageProvider;
 import de.sub.goobi.helper.exceptions.SwapException;
+import de.sub.goobi.persistence.managers.MetadataManager;
 import io.goobi.workflow.api.connection.HttpUtils;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.log4j.Log4j2;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
-import ugh.dl.ContentFile;
 import ugh.dl.DigitalDocument;
 import ugh.dl.DocStruct;
 import ugh.dl.DocStructType;
@@ -77,6 +73,26 @@ public class OidStepPlugin implements IStepPluginVersion2 {
     @Getter
     private int interfaceVersion = 0;
 
+    // state of the current execution, shared between prepare() and complete()
+    @Getter(AccessLevel.PACKAGE)
+    private OidConfiguration config;
+    private Fileformat fileformat;
+    private DocStruct logical;
+    private DocStruct physical;
+    private List<DocStruct> pageList;
+    private Metadata identifier;
+    private boolean skipMainElement;
+    private ContentFileIndex contentFiles;
+    private MetsStreamPatcher patcher;
+    private RenamePlanner renamePlanner;
+
+    // checksums of the renamed files, null if not configured
+    private ChecksumCollector checksums;
+    private RenameJournal journal;
+    @Getter(AccessLevel.PACKAGE)
+    private int numberOfNewOids;
+    private ExecutionMetrics metrics;
+
     @Override
     public String cancel() {
         return null;
@@ -84,11 +100,8 @@ public class OidStepPlugin implements IStepPluginVersion2 {
 
     @Override
     public boolean execute() {
-        if (run() != PluginReturnValue.FINISH) {
-            return false;
-        } else {
-            return true;
-        }
+        // manual executions always finish before returning
+        return runSynchronously() == PluginReturnValue.FINISH;
     }
 
     @Override
@@ -111,33 +124,168 @@ public class OidStepPlugin implements IStepPluginVersion2 {
 
     @Override
     public PluginReturnValue run() {
+        OidConfiguration configuration = OidConfiguration.getInstance(title, step);
+        if (configuration.isAsyncEnabled()) {
+            // the step stays in work and is closed by the runner
+            return AsyncStepRunner.getInstance(configuration.getAsyncThreads(), configuration.getAsyncQueueSize()).submit(this);
+        }
+        return runSynchronously();
+    }
 
-        XMLConfiguration config = ConfigPlugins.getPluginConfig(title);
+    /**
+     * Assign the OIDs and rename the files in the current thread
+     *
+     * @return result of the execution
+     */
+    PluginReturnValue runSynchronously() {
+        // a second execution for the same process waits and finds all OIDs assigned afterwards
+        int processId = process.getId();
+        try {
+            ProcessLocks.lock(processId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Helper.addMessageToProcessJournal(processId, LogType.ERROR, "Interrupted while waiting for another execution", "- automatic -");
+            return PluginReturnValue.ERROR;
+        }
+        try {
+            PluginReturnValue result = prepare();
+            if (result != null) {
+                return result;
+            }
+            long[] values = new long[0];
+            if (numberOfNewOids > 0) {
+                try {
+                    values = allocateOids();
+                } catch (IOException e) {
+                    return failRequest(e);
+                }
+            }
+            return complete(values);
+        } finally {
+            ProcessLocks.unlock(processId);
+        }
+    }
 
-        String url = config.getString("url", "http://example.com");
-        String username = config.getString("username");
-        String password = config.getString("password");
-        String headername = config.getString("headerparam", "Accept");
-        String headervalue = config.getString("headerValue", "application/json");
+    /**
+     * Get new identifiers for the objects without id from the API or the reservoir. OIDs that were allocated by an interrupted execution are
+     * reused. Otherwise the OIDs are requested with an idempotency key that is stored in the journal first, so the API can answer a repeated request
+     * with the same OIDs.
+     *
+     * @return at least {@link #getNumberOfNewOids()} OIDs
+     * @throws IOException
+     */
+    private long[] allocateOids() throws IOException {
+        long[] allocated = getAllocatedOids();
+        if (allocated != null) {
+            return allocated;
+        }
+        if (journal.getAllocatedOids() != null || journal.getRequestKey() == null) {
+            // the allocation does not match the objects anymore, a new request needs a new key
+            journal.setRequestKey(process.getId() + "-" + step.getId() + "-" + System.currentTimeMillis());
+            journal.setAllocatedOids(null);
+            journal.write();
+        }
+        long start = metrics.start();
+        try {
+            allocated = getOidSource(journal.getRequestKey()).getOids(numberOfNewOids);
+        } finally {
+            metrics.stop(Phase.OID_REQUEST, start);
+        }
+        metrics.addOidsRequested(allocated.length);
+        journal.setAllocatedOids(allocated);
+        journal.write();
+        return allocated;
+    }
+
+    /**
+     * Get the OIDs that an interrupted execution allocated for this process. {@link #prepare()} must be called first.
+     *
+     * @return OIDs or null, if new OIDs must be requested
+     */
+    long[] getAllocatedOids() {
+        long[] allocated = journal.getAllocatedOids();
+        if (allocated == null || allocated.length < numberOfNewOids) {
+            return null;
+        }
+        log.info("Reuse {} OIDs allocated by an earlier execution for process {}", numberOfNewOids, process.getId());
+        return allocated;
+    }
+
+    /**
+     * Store OIDs that a batch requested for several processes in the journal, before they are assigned with {@link #complete(long[])}. A failed or
+     * interrupted execution finds them with {@link #getAllocatedOids()}.
+     *
+     * @param values new OIDs for this process
+     * @return null, if the OIDs were stored, otherwise the final result of the execution
+     */
+    PluginReturnValue storeAllocatedOids(long[] values) {
+        metrics.addOidsRequested(values.length);
+        if (values.length > 0) {
+            try {
+                journal.setAllocatedOids(values);
+                journal.write();
+            } catch (IOException e) {
+                return fail("Cannot store the allocated OIDs", e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Open the METS file and count the objects without OID. Renames of an interrupted earlier run are finished first.
+     *
+     * @return null, if OIDs must be assigned, otherwise the final result of the execution
+     */
+    PluginReturnValue prepare() {
+        metrics = new ExecutionMetrics();
+        long start = metrics.start();
+        config = OidConfiguration.getInstance(title, step);
+        metrics.stop(Phase.CONFIG_LOAD, start);
+        // an invalid checksum algorithm must be found before any file is renamed
+        try {
+            checksums = ChecksumCollector.create(config);
+        } catch (NoSuchAlgorithmException e) {
+            return fail("Invalid checksum algorithm in the configuration", e);
+        }
+        OidHttpClient.configure(config.getHttpMaxConnections(), config.getHttpMaxConnectionsPerRoute(), config.getHttpKeepAlive(),
+                config.getHttpConnectTimeout(), config.getHttpSocketTimeout());
         // open metadata file
         MetadataType identifierType = prefs.getMetadataTypeByName("CatalogIDDigital");
         MetadataType contentIdsType = prefs.getMetadataTypeByName("_urn");
         int numberOfOids = 0;
+        patcher = null;
 
         try {
-            Fileformat fileformat = process.readMetadataFile();
+            // nothing to do if the METS file was not changed since all OIDs were assigned
+            Path metsFile = Paths.get(process.getMetadataFilePath());
+            Path processFolder = Paths.get(process.getProcessDataDirectory());
+            if (!Files.exists(processFolder.resolve(RenameJournal.FILENAME)) && OidState.isUnchanged(processFolder, metsFile)) {
+                log.debug("METS file of process {} is unchanged since all OIDs were assigned", process.getId());
+                return finish(PluginReturnValue.FINISH);
+            }
+            if (config.isStreamingMets()) {
+                start = metrics.start();
+                MetsStreamPatcher scanned = MetsStreamPatcher.scan(metsFile);
+                metrics.stop(Phase.READ_METS, start);
+                if (scanned.isSupported()) {
+                    patcher = scanned;
+                    return prepareStreaming();
+                }
+                log.info("METS file of process {} cannot be patched, because {}, use UGH instead", process.getId(), scanned.getUnsupportedReason());
+            }
+            start = metrics.start();
+            fileformat = process.readMetadataFile();
+            metrics.stop(Phase.READ_METS, start);
             // get main object
-            DocStruct logical = fileformat.getDigitalDocument().getLogicalDocStruct();
+            logical = fileformat.getDigitalDocument().getLogicalDocStruct();
             // check if main element contains a OID
 
             List<? extends Metadata> mdl = logical.getAllMetadataByType(identifierType);
-            Metadata identifier = null;
-            boolean skipMainElement = false;
+            identifier = null;
+            skipMainElement = false;
             if (!mdl.isEmpty()) {
                 identifier = mdl.get(0);
-                if (identifier.getValue().matches("\\d+") && identifier.getValue().length() <= 9) {
-                    skipMainElement = true;
-                }
+                skipMainElement = isOid(identifier.getValue());
             }
 
             if (!skipMainElement) {
@@ -146,74 +294,153 @@ public class OidStepPlugin implements IStepPluginVersion2 {
 
             // get page objects
             DigitalDocument dd = fileformat.getDigitalDocument();
-            DocStruct physical = dd.getPhysicalDocStruct();
+            contentFiles = new ContentFileIndex(dd);
+            physical = dd.getPhysicalDocStruct();
             if (physical == null) {
                 DocStructType physicalType = prefs.getDocStrctTypeByName("BoundBook");
                 physical = dd.createDocStruct(physicalType);
                 dd.setPhysicalDocStruct(physical);
             }
 
-            List<DocStruct> pageList = physical.getAllChildren();
+            pageList = physical.getAllChildren();
 
             if (pageList == null || pageList.isEmpty()) {
-                List<Path> images = StorageProvider.getInstance().listFiles(process.getImagesTifDirectory(false));
-                int currentPhysicalOrder = 0;
-                for (Path image : images) {
-                    DocStruct page = dd.createDocStruct(prefs.getDocStrctTypeByName("page"));
-                    page.setImageName(image.toString());
-                    // physical page no
-                    MetadataType mdt = prefs.getMetadataTypeByName("physPageNumber");
-                    Metadata mdTemp = new Metadata(mdt);
-                    mdTemp.setValue(String.valueOf(++currentPhysicalOrder));
-                    page.addMetadata(mdTemp);
-
-                    // logical page no
-                    mdt = prefs.getMetadataTypeByName("logicalPageNumber");
-                    mdTemp = new Metadata(mdt);
-                    mdTemp.setValue("uncounted");
-
-                    page.addMetadata(mdTemp);
-                    physical.addChild(page);
-                    logical.addReferenceTo(page, "logical_physical");
-                }
+                new PaginationBuilder(prefs).build(dd, logical, physical, Paths.get(process.getImagesTifDirectory(false)));
                 pageList = physical.getAllChildren();
             }
 
             if (pageList == null || pageList.isEmpty()) {
                 log.error("Process {} does not contain any images, abort OID creation", process.getId());
-                return PluginReturnValue.ERROR;
+                metrics.addFailures(1);
+                Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "The process does not contain any images", "- automatic -");
+                return finish(PluginReturnValue.ERROR);
             }
 
+            PluginReturnValue result = finishPendingRenames();
+            if (result != null) {
+                return result;
+            }
+            numberOfNewOids = skipMainElement || journal.getMainOid() != null ? 0 : 1;
+
             // get OIDs only for objects without ids
             for (DocStruct page : pageList) {
                 List<? extends Metadata> urns = page.getAllMetadataByType(contentIdsType);
                 if (urns.isEmpty()) {
                     numberOfOids++;
+                    if (journal.getPageOid(getFilename(page)) == null) {
+                        numberOfNewOids++;
+                    }
+                }
+            }
+            result = checkMissingOids(numberOfOids, pageList.size());
+            return result != null ? result : indexFolders(pageList.size());
+        } catch (UGHException | IOException | SwapException e) {
+            return fail("Cannot read the metadata of the process", e);
+        }
+    }
+
+    /**
+     * Count the objects without OID in the scanned METS file, see {@link #prepare()}
+     */
+    private PluginReturnValue prepareStreaming() throws IOException, SwapException {
+        skipMainElement = isOid(patcher.getMainOid());
+        PluginReturnValue result = finishPendingRenames();
+        if (result != null) {
+            return result;
+        }
+        int numberOfOids = skipMainElement ? 0 : 1;
+        numberOfNewOids = skipMainElement || journal.getMainOid() != null ? 0 : 1;
+        for (MetsStreamPatcher.Page page : patcher.getPages()) {
+            if (page.getOid() == null) {
+                numberOfOids++;
+                if (journal.getPageOid(page.getFilename()) == null) {
+                    numberOfNewOids++;
                 }
             }
-            if (numberOfOids == 0) {
-                // all fields contain OIDs, finish
-                return PluginReturnValue.FINISH;
+        }
+        result = checkMissingOids(numberOfOids, patcher.getPages().size());
+        return result != null ? result : indexFolders(patcher.getPages().size());
+    }
+
+    /**
+     * Finish the renaming of an interrupted run. The OIDs assigned in this run are reused.
+     *
+     * @return null, if no renames are pending anymore, otherwise the final result of the execution
+     */
+    private PluginReturnValue finishPendingRenames() throws IOException, SwapException {
+        journal = RenameJournal.open(Paths.get(process.getProcessDataDirectory()));
+        if (!journal.isEmpty()) {
+            if (journal.isDeferred() && config.isDeferRenames()) {
+                // the renames of earlier runs stay deferred
+                return null;
+            }
+            List<FileRename> pending = journal.getPendingRenames();
+            long start = metrics.start();
+            List<String> renameErrors = RenameStrategy.create(config, journal, checksums).execute(pending);
+            if (checksums != null) {
+                checksums.write(process);
+            }
+            metrics.stop(Phase.RENAME_EXECUTION, start);
+            metrics.addFilesRenamed(pending.size() - renameErrors.size());
+            if (!renameErrors.isEmpty()) {
+                Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, RenameExecutor.getErrorSummary(renameErrors), "- automatic -");
+                metrics.addFailures(renameErrors.size());
+                return finish(PluginReturnValue.ERROR);
             }
-            // request number of pages + 1
-            if (numberOfOids != pageList.size() + 1) {
-                // WARNING; we update an existing object
-                Helper.addMessageToProcessJournal(process.getId(), LogType.INFO, "OID request was executed multiple times.", "- automatic -");
+        }
+        return null;
+    }
+
+    /**
+     * Finish the execution if all objects already have an OID
+     *
+     * @param numberOfOids number of objects without OID
+     * @param numberOfPages number of pages
+     * @return null, if OIDs must be assigned, otherwise the final result of the execution
+     */
+    private PluginReturnValue checkMissingOids(int numberOfOids, int numberOfPages) throws IOException {
+        if (numberOfOids == 0) {
+            // all fields contain OIDs, finish
+            if (journal.isDeferred() && config.isDeferRenames()) {
+                return finish(PluginReturnValue.FINISH);
             }
-            numberOfOids = pageList.size() + 1;
+            journal.delete();
+            writeState();
+            return finish(PluginReturnValue.FINISH);
+        }
 
-            // get new identifiers from list
-            String response = getStringFromUrl(url + numberOfOids, username, password, headername, headervalue);
-            JsonElement jsonTree = JsonParser.parseString(response);
+        if (numberOfNewOids > 0 && numberOfOids != numberOfPages + 1) {
+            // WARNING; we update an existing object
+            Helper.addMessageToProcessJournal(process.getId(), LogType.INFO, "OID request was executed multiple times.", "- automatic -");
+        }
+        return null;
+    }
 
-            JsonObject jsonObject = jsonTree.getAsJsonObject();
-            JsonElement oids = jsonObject.get("oids");
-            JsonArray values = oids.getAsJsonArray();
+    /**
+     * Assign the OIDs to all objects without OID, rename the files and save the METS file. {@link #prepare()} must be called first.
+     *
+     * @param values new OIDs, the array must contain at least {@link #getNumberOfNewOids()} elements
+     * @return result of the execution
+     */
+    PluginReturnValue complete(long[] values) {
+        if (patcher != null) {
+            return completeStreaming(values);
+        }
+        MetadataType identifierType = prefs.getMetadataTypeByName("CatalogIDDigital");
+        MetadataType contentIdsType = prefs.getMetadataTypeByName("_urn");
 
+        try {
             int counter = 0;
+            int assigned = 0;
 
             if (!skipMainElement) {
-                Long oid = values.get(counter).getAsLong();
+                String oid = journal.getMainOid();
+                if (oid == null) {
+                    oid = String.valueOf(values[counter]);
+                    journal.setMainOid(oid);
+                    counter++;
+                }
+                assigned++;
                 if (identifier == null) {
                     try {
                         identifier = new Metadata(identifierType);
@@ -222,125 +449,353 @@ public class OidStepPlugin implements IStepPluginVersion2 {
                         log.error(e);
                     }
                 }
-                identifier.setValue(String.valueOf(oid));
+                identifier.setValue(oid);
                 // also write it to the physical object
                 try {
                     Metadata urn = new Metadata(contentIdsType);
-                    urn.setValue(String.valueOf(oid));
+                    urn.setValue(oid);
                     physical.addMetadata(urn);
                 } catch (MetadataTypeNotAllowedException | DocStructHasNoTypeException e) {
                     log.error(e);
                 }
-                counter++;
             }
 
-            // get all folders to check and rename images
-            Map<Path, List<Path>> allFolderAndAllFiles = process.getAllFolderAndFiles();
-            // check size of folders, remove them if they don't match the expected number of files
-            for (Path p : allFolderAndAllFiles.keySet()) {
-                List<Path> files = allFolderAndAllFiles.get(p);
-                if (pageList.size() != files.size()) {
-                    files = Collections.emptyList();
-                }
-            }
+            long start = metrics.start();
+            List<FileRename> renamePlan = new ArrayList<>();
 
             for (DocStruct page : pageList) {
-
-                System.out.println(page.getImageName());
                 List<? extends Metadata> urns = page.getAllMetadataByType(contentIdsType);
                 if (urns.isEmpty()) {
                     try {
+                        String oldFilename = getFilename(page);
+                        String oid = journal.getPageOid(oldFilename);
+                        if (oid == null) {
+                            oid = String.valueOf(values[counter]);
+                            journal.addPage(oldFilename, oid);
+                            counter++;
+                        }
+                        assigned++;
                         Metadata urn = new Metadata(contentIdsType);
-                        Long oid = values.get(counter).getAsLong();
-                        urn.setValue(String.valueOf(oid));
+                        urn.setValue(oid);
                         page.addMetadata(urn);
-                        // rename images to OID.extension
-                        String oldFilename = page.getImageName();
-                        Path f = Paths.get(oldFilename).getFileName();
-                        oldFilename = f.toString();
-                        int dot = oldFilename.lastIndexOf('.');
-                        String basename = (dot == -1) ? oldFilename : oldFilename.substring(0, dot);
-                        String extension = (dot == -1) ? "" : oldFilename.substring(dot + 1);
-
-                        for (Path currentFolder : allFolderAndAllFiles.keySet()) {
-                            // check files in current folder
-                            List<Path> files = allFolderAndAllFiles.get(currentFolder);
-                            for (Path file : files) {
-                                String filenameToCheck = file.getFileName().toString();
-                                String filenamePrefixToCheck = filenameToCheck.substring(0, filenameToCheck.lastIndexOf("."));
-                                String fileExtension = filenameToCheck.substring(filenameToCheck.lastIndexOf(".") + 1);
-                                // find the current file the folder
-                                if (filenamePrefixToCheck.equals(basename)) {
-                                    // found file to rename, create new file name
-                                    Path tmpFileName = Paths.get(currentFolder.toString(), urn.getValue() + "." + fileExtension);
-                                    try {
-                                        StorageProvider.getInstance().move(file, tmpFileName);
-                                    } catch (IOException e) {
-                                        log.error(e);
-                                    }
-                                }
-                            }
-                        }
+                        // plan the renaming of all files to OID.extension
+                        String basename = RenamePlanner.getBasename(oldFilename);
+                        String extension = RenamePlanner.getExtension(oldFilename);
+
+                        // find the files of the current page in all folders
+                        renamePlan.addAll(renamePlanner.plan(basename, oid));
 
                         // write new image names to page objects
-                        page.setImageName(urn.getValue() + "." + extension);
+                        page.setImageName(oid + "." + extension);
 
-                        for (ContentFile cf : dd.getFileSet().getAllFiles()) {
-                            String oldLocation = Paths.get(cf.getLocation()).getFileName().toString();
-                            if (oldLocation.equals(oldFilename)) {
-                                cf.setLocation("file://" + urn.getValue() + "." + extension);
-                            }
-                        }
-                        counter++;
+                        contentFiles.relocate(oldFilename, "file://" + oid + "." + extension);
                     } catch (MetadataTypeNotAllowedException | DocStructHasNoTypeException e) {
                         log.error(e);
                     }
                 }
             }
-            // save metadata file
-            process.writeMetadataFile(fileformat);
+            storeRenames(renamePlan);
+            metrics.stop(Phase.RENAME_PLANNING, start);
+            countOids(assigned, counter);
+
+            return renameAndSave(renamePlan);
+        } catch (UGHException | IOException | SwapException e) {
+            return fail("Cannot assign the OIDs", e);
+        }
+    }
+
+    /**
+     * Assign the OIDs in the scanned METS file, see {@link #complete(long[])}
+     */
+    private PluginReturnValue completeStreaming(long[] values) {
+        try {
+            int counter = 0;
+            int assigned = 0;
+            if (!skipMainElement) {
+                String oid = journal.getMainOid();
+                if (oid == null) {
+                    oid = String.valueOf(values[counter]);
+                    journal.setMainOid(oid);
+                    counter++;
+                }
+                assigned++;
+                patcher.setMainOid(oid);
+            }
+
+            long start = metrics.start();
+            List<FileRename> renamePlan = new ArrayList<>();
+            for (MetsStreamPatcher.Page page : patcher.getPages()) {
+                if (page.getOid() == null) {
+                    String oldFilename = page.getFilename();
+                    String oid = journal.getPageOid(oldFilename);
+                    if (oid == null) {
+                        oid = String.valueOf(values[counter]);
+                        journal.addPage(oldFilename, oid);
+                        counter++;
+                    }
+                    assigned++;
+                    renamePlan.addAll(renamePlanner.plan(RenamePlanner.getBasename(oldFilename), oid));
+                    patcher.setPageOid(page, oid, "file://" + oid + "." + RenamePlanner.getExtension(oldFilename));
+                }
+            }
+            storeRenames(renamePlan);
+            metrics.stop(Phase.RENAME_PLANNING, start);
+            countOids(assigned, counter);
 
+            return renameAndSave(renamePlan);
         } catch (UGHException | IOException | SwapException e) {
-            log.error(e);
+            return fail("Cannot assign the OIDs", e);
+        }
+    }
+
+    /**
+     * Count the assigned OIDs. The OIDs requested by this execution that were not taken are wasted.
+     *
+     * @param assigned number of objects that got an OID, including OIDs from the journal
+     * @param taken number of OIDs taken from the new OIDs
+     */
+    private void countOids(int assigned, int taken) {
+        metrics.addOidsUsed(assigned);
+        metrics.addOidsWasted(Math.max(0, metrics.getOidsRequested() - taken));
+    }
+
+    /**
+     * Index the files of the configured folders and validate them, before any OIDs are requested
+     *
+     * @param numberOfPages expected number of files in each validated folder
+     * @return null, if the files can be renamed, otherwise the final result of the execution
+     */
+    private PluginReturnValue indexFolders(int numberOfPages) {
+        long start = metrics.start();
+        try {
+            renamePlanner = RenamePlanner.create(Paths.get(process.getProcessDataDirectory()), FolderScope.create(config), numberOfPages);
+            metrics.stop(Phase.RENAME_PLANNING, start);
+            return null;
+        } catch (IOException | SwapException e) {
+            metrics.stop(Phase.RENAME_PLANNING, start);
+            return fail("Cannot rename the files", e);
+        }
+    }
+
+    /**
+     * Store the assigned OIDs and the planned renames in the journal before any file is moved
+     *
+     * @param renamePlan planned renames
+     * @throws IOException
+     */
+    private void storeRenames(List<FileRename> renamePlan) throws IOException {
+        // the allocated OIDs are assigned now
+        journal.setRequestKey(null);
+        journal.setAllocatedOids(null);
+        if (config.isDeferRenames()) {
+            // keep the renames deferred by earlier runs
+            List<FileRename> renames = new ArrayList<>(journal.getRenames());
+            renames.addAll(renamePlan);
+            journal.setRenames(renames);
+            journal.setDeferred(true);
+        } else {
+            journal.setRenames(renamePlan);
+            journal.setDeferred(false);
+        }
+        journal.write();
+    }
+
+    /**
+     * Rename the files and save the METS file. The planned renames must be stored in the journal before.
+     *
+     * @param renamePlan planned renames
+     * @return result of the execution
+     */
+    private PluginReturnValue renameAndSave(List<FileRename> renamePlan) throws UGHException, IOException, SwapException {
+        if (config.isDeferRenames()) {
+            // only the METS file is saved, the files keep their names until the renames are executed
+            long start = metrics.start();
+            saveMetadata();
+            metrics.stop(Phase.WRITE_METS, start);
+            log.debug("Deferred {} renames of process {}", renamePlan.size(), process.getId());
+            return finish(PluginReturnValue.FINISH);
+        }
+        // rename images to OID.extension
+        long start = metrics.start();
+        List<String> renameErrors = RenameStrategy.create(config, journal, checksums).execute(renamePlan);
+        if (checksums != null) {
+            checksums.write(process);
+        }
+        metrics.stop(Phase.RENAME_EXECUTION, start);
+        metrics.addFilesRenamed(renamePlan.size() - renameErrors.size());
+
+        // save metadata file
+        start = metrics.start();
+        saveMetadata();
+        metrics.stop(Phase.WRITE_METS, start);
+
+        if (!renameErrors.isEmpty()) {
+            // keep the journal, the next run finishes the pending renames
+            Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, RenameExecutor.getErrorSummary(renameErrors), "- automatic -");
+            metrics.addFailures(renameErrors.size());
+            return finish(PluginReturnValue.ERROR);
+        }
+        journal.delete();
+        writeState();
+        return finish(PluginReturnValue.FINISH);
+    }
+
+    /**
+     * Save the METS file, either the patched copy or the complete file format
+     */
+    private void saveMetadata() throws UGHException, IOException, SwapException {
+        if (patcher != null) {
+            patcher.write(ConfigurationHelper.getInstance().getNumberOfMetaBackups());
+            updateMetadataIndex();
+        } else {
+            process.writeMetadataFile(fileformat);
+        }
+    }
+
+    /**
+     * Update the metadata index of the database, which is used for search and export. When UGH writes the file format, the index is rebuilt from
+     * the metadata of the logical elements and the physical root. Of the patched values only the identifier and the OID of the physical root are
+     * part of it, the OIDs of the pages and the file locations are not indexed. Both values are changed the same way as in
+     * {@link #complete(long[])}: the identifier is replaced, the OID of the physical root is added.
+     */
+    private void updateMetadataIndex() {
+        String oid = patcher.getNewMainOid();
+        if (oid == null) {
+            return;
+        }
+        Map<String, List<String>> metadata = new HashMap<>();
+        for (StringPair pair : MetadataManager.getMetadata(process.getId())) {
+            metadata.computeIfAbsent(pair.getOne(), k -> new ArrayList<>()).add(pair.getTwo());
+        }
+        metadata.put("CatalogIDDigital", Collections.singletonList(oid));
+        metadata.computeIfAbsent("_urn", k -> new ArrayList<>()).add(oid);
+        MetadataManager.updateMetadata(process.getId(), metadata);
+    }
+
+    /**
+     * Remember that all OIDs are assigned, so that the next execution can finish without opening the METS file
+     */
+    private void writeState() {
+        try {
+            String mainOid;
+            List<String> pageOids;
+            if (patcher != null) {
+                mainOid = patcher.getAssignedMainOid();
+                pageOids = patcher.getAssignedPageOids();
+            } else {
+                MetadataType contentIdsType = prefs.getMetadataTypeByName("_urn");
+                mainOid = identifier == null ? null : identifier.getValue();
+                pageOids = new ArrayList<>(pageList.size());
+                for (DocStruct page : pageList) {
+                    List<? extends Metadata> urns = page.getAllMetadataByType(contentIdsType);
+                    pageOids.add(urns.isEmpty() ? null : urns.get(0).getValue());
+                }
+            }
+            OidState.write(Paths.get(process.getProcessDataDirectory()), Paths.get(process.getMetadataFilePath()), mainOid, pageOids);
+        } catch (IOException | SwapException e) {
+            log.warn("Cannot write OID state of process {}", process.getId(), e);
+        }
+    }
+
+    /**
+     * Report that the new OIDs could not be requested
+     *
+     * @param e cause
+     * @return ERROR
+     */
+    PluginReturnValue failRequest(IOException e) {
+        return fail("Cannot get new OIDs", e);
+    }
+
+    /**
+     * Log an error of the execution and add it to the journal of the process
+     *
+     * @param message description of the failed action
+     * @param e cause
+     * @return ERROR
+     */
+    private PluginReturnValue fail(String message, Exception e) {
+        log.error("{} of process {}", message, process.getId(), e);
+        metrics.addFailures(1);
+        Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, message + ": " + e.getMessage(), "- automatic -");
+        return finish(PluginReturnValue.ERROR);
+    }
+
+    /**
+     * Record the metrics of the execution and add a summary to the journal, if anything was changed
+     *
+     * @param result result of the execution
+     * @return the result
+     */
+    private PluginReturnValue finish(PluginReturnValue result) {
+        OidMetrics.getInstance().record(metrics);
+        log.debug("Process {}: {}", process.getId(), metrics.getSummary());
+        if (metrics.getOidsRequested() > 0 || metrics.getFilesRenamed() > 0 || metrics.getFailures() > 0) {
+            Helper.addMessageToProcessJournal(process.getId(), LogType.DEBUG, metrics.getSummary(), "- automatic -");
+        }
+        return result;
+    }
+
+    /**
+     * Get the source for new OIDs of the current configuration
+     *
+     * @param requestKey idempotency key of the request, can be null
+     * @return OID source
+     */
+    OidSource getOidSource(String requestKey) {
+        // the request rate is limited for the whole node
+        AdmissionControl.getInstance().configure(config);
+        EndpointBalancer endpoints = EndpointBalancer.getInstance(config);
+        if (config.isReservoirEnabled()) {
+            // the reservoir is refilled independently of single processes, without a key
+            OidSource refill = new HttpOidSource(endpoints, config.getUsername(), config.getPassword(), config.getHeaderParam(),
+                    config.getHeaderValue(), config.getChunkSize(), null);
+            return OidReservoir.getInstance(config.getReservoirFile(), config.getReservoirLowWaterMark(), config.getReservoirRefillSize(), refill);
         }
-        return PluginReturnValue.FINISH;
+        return new HttpOidSource(endpoints, config.getUsername(), config.getPassword(), config.getHeaderParam(), config.getHeaderValue(),
+                config.getChunkSize(), requestKey);
+    }
+
+    /**
+     * Check if the identifier of the main element is an OID
+     *
+     * @param value identifier
+     * @return true, if the value is a number with up to 9 digits
+     */
+    private boolean isOid(String value) {
+        return value != null && value.matches("\\d+") && value.length() <= 9;
+    }
+
+    private String getFilename(DocStruct page) {
+        return Paths.get(page.getImageName()).getFileName().toString();
     }
 
-    static String getStringFromUrl(String url, String username, String password, String headerParam, String headerParamValue) {
-        String response = "";
-        CloseableHttpClient client = null;
+    static String getStringFromUrl(String url, String username, String password, String headerParam, String headerParamValue,
+            String idempotencyKey) throws IOException {
         HttpGet method = new HttpGet(url);
+        method.setConfig(OidHttpClient.getRequestConfig());
 
+        HttpClientContext context = HttpClientContext.create();
         if (StringUtils.isNotBlank(username) && StringUtils.isNotBlank(password)) {
             CredentialsProvider credsProvider = new BasicCredentialsProvider();
             credsProvider.setCredentials(new AuthScope(null, -1), new UsernamePasswordCredentials(username, password));
-            client = HttpClients.custom().setDefaultCredentialsProvider(credsProvider).build();
-
-        } else {
-            client = HttpClientBuilder.create().build();
+            context.setCredentialsProvider(credsProvider);
         }
 
         if (headerParam != null) {
             // add header parameter
             method.setHeader(headerParam, headerParamValue);
         }
+        if (idempotencyKey != null) {
+            method.setHeader(HttpOidSource.IDEMPOTENCY_HEADER, idempotencyKey);
+        }
 
         try {
-            response = client.execute(method, HttpUtils.stringResponseHandler);
-        } catch (IOException e) {
-            log.error("Cannot execute URL " + url, e);
+            // the client is shared, only the connection is returned to the pool
+            return OidHttpClient.getClient().execute(method, HttpUtils.stringResponseHandler, context);
         } finally {
             method.releaseConnection();
-
-            if (client != null) {
-                try {
-                    client.close();
-                } catch (IOException e) {
-                    log.error(e);
-                }
-            }
         }
-        return response;
     }
 
 }
@@ -0,0 +1,193 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+import ugh.exceptions.UGHException;
+
+/**
+ * Creates the pagination of a digital document from the files of an image folder. Each image becomes a page with a physical page number and
+ * the logical page number <code>uncounted</code>, and each page is linked to the main element.
+ *
+ * The page type and the metadata types are looked up in the ruleset only once, so the builder can be used for folders with many thousand
+ * images. It can also be reused for several documents with the same ruleset.
+ */
+public class PaginationBuilder {
+
+    /**
+     * Compares file names in natural order, numbers within the names are compared by their value. <code>2.tif</code> is sorted before
+     * <code>10.tif</code>.
+     */
+    public static final Comparator<Path> NATURAL_ORDER = (p1, p2) -> compareNatural(p1.getFileName().toString(), p2.getFileName().toString());
+
+    private final DocStructType pageType;
+
+    private final MetadataType physicalPageNumberType;
+
+    private final MetadataType logicalPageNumberType;
+
+    /**
+     * Create a builder for the given ruleset
+     *
+     * @param prefs ruleset
+     * @throws PreferencesException if the ruleset does not contain the page type or the page number metadata
+     */
+    public PaginationBuilder(Prefs prefs) throws PreferencesException {
+        pageType = prefs.getDocStrctTypeByName("page");
+        physicalPageNumberType = prefs.getMetadataTypeByName("physPageNumber");
+        logicalPageNumberType = prefs.getMetadataTypeByName("logicalPageNumber");
+        if (pageType == null || physicalPageNumberType == null || logicalPageNumberType == null) {
+            throw new PreferencesException("The ruleset does not define the type page and the metadata physPageNumber and logicalPageNumber");
+        }
+    }
+
+    /**
+     * List all images of a folder in natural order. Hidden files and sub folders are ignored. On S3 the files are listed with the
+     * {@link StorageProvider}, otherwise the folder is read with a single directory stream.
+     *
+     * @param folder image folder
+     * @return sorted list of images
+     * @throws IOException
+     */
+    public List<Path> listImages(Path folder) throws IOException {
+        if (ConfigurationHelper.getInstance().useS3()) {
+            List<Path> images = new ArrayList<>(StorageProvider.getInstance().listFiles(folder.toString()));
+            images.sort(NATURAL_ORDER);
+            return images;
+        }
+        return listLocalImages(folder);
+    }
+
+    static List<Path> listLocalImages(Path folder) throws IOException {
+        List<Path> images = new ArrayList<>();
+        if (!Files.isDirectory(folder)) {
+            return images;
+        }
+        DirectoryStream.Filter<Path> filter = p -> !p.getFileName().toString().startsWith(".") && Files.isRegularFile(p);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, filter)) {
+            for (Path image : stream) {
+                images.add(image);
+            }
+        }
+        images.sort(NATURAL_ORDER);
+        return images;
+    }
+
+    /**
+     * Create a page for each image of a folder
+     *
+     * @param dd digital document
+     * @param logical main element the pages are linked to
+     * @param physical physical root element the pages are added to
+     * @param folder image folder
+     * @return number of created pages
+     * @throws IOException
+     * @throws UGHException
+     */
+    public int build(DigitalDocument dd, DocStruct logical, DocStruct physical, Path folder) throws IOException, UGHException {
+        return build(dd, logical, physical, listImages(folder));
+    }
+
+    /**
+     * Create a page for each image. The pages are appended to the existing pages of the physical element.
+     *
+     * @param dd digital document
+     * @param logical main element the pages are linked to
+     * @param physical physical root element the pages are added to
+     * @param images images in the order of the pages
+     * @return number of created pages
+     * @throws UGHException
+     */
+    public int build(DigitalDocument dd, DocStruct logical, DocStruct physical, List<Path> images) throws UGHException {
+        int currentPhysicalOrder = physical.getAllChildren() == null ? 0 : physical.getAllChildren().size();
+        for (Path image : images) {
+            DocStruct page = dd.createDocStruct(pageType);
+            page.setImageName(image.toString());
+
+            Metadata physicalPageNumber = new Metadata(physicalPageNumberType);
+            physicalPageNumber.setValue(String.valueOf(++currentPhysicalOrder));
+            page.addMetadata(physicalPageNumber);
+
+            Metadata logicalPageNumber = new Metadata(logicalPageNumberType);
+            logicalPageNumber.setValue("uncounted");
+            page.addMetadata(logicalPageNumber);
+
+            physical.addChild(page);
+            logical.addReferenceTo(page, "logical_physical");
+        }
+        return images.size();
+    }
+
+    /**
+     * Compare two strings in natural order. Runs of digits are compared by their numeric value, all other characters one by one.
+     *
+     * @param s1 first string
+     * @param s2 second string
+     * @return comparison result
+     */
+    static int compareNatural(String s1, String s2) {
+        int i1 = 0;
+        int i2 = 0;
+        while (i1 < s1.length() && i2 < s2.length()) {
+            char c1 = s1.charAt(i1);
+            char c2 = s2.charAt(i2);
+            if (Character.isDigit(c1) && Character.isDigit(c2)) {
+                int end1 = i1;
+                while (end1 < s1.length() && Character.isDigit(s1.charAt(end1))) {
+                    end1++;
+                }
+                int end2 = i2;
+                while (end2 < s2.length() && Character.isDigit(s2.charAt(end2))) {
+                    end2++;
+                }
+                // ignore leading zeros, then the longer number is larger
+                int start1 = i1;
+                while (start1 < end1 - 1 && s1.charAt(start1) == '0') {
+                    start1++;
+                }
+                int start2 = i2;
+                while (start2 < end2 - 1 && s2.charAt(start2) == '0') {
+                    start2++;
+                }
+                int length1 = end1 - start1;
+                int length2 = end2 - start2;
+                if (length1 != length2) {
+                    return length1 - length2;
+                }
+                for (int k = 0; k < length1; k++) {
+                    int diff = s1.charAt(start1 + k) - s2.charAt(start2 + k);
+                    if (diff != 0) {
+                        return diff;
+                    }
+                }
+                // equal values, the number with less leading zeros first
+                if (end1 - i1 != end2 - i2) {
+                    return (end1 - i1) - (end2 - i2);
+                }
+                i1 = end1;
+                i2 = end2;
+            } else {
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+                i1++;
+                i2++;
+            }
+        }
+        return (s1.length() - i1) - (s2.length() - i2);
+    }
+}
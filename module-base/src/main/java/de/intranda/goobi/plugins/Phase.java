@@ -0,0 +1,24 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * Phases of an execution that are measured separately
+ */
+enum Phase {
+
+    CONFIG_LOAD("config"),
+    READ_METS("read"),
+    OID_REQUEST("request"),
+    RENAME_PLANNING("planning"),
+    RENAME_EXECUTION("rename"),
+    WRITE_METS("write");
+
+    private final String label;
+
+    Phase(String label) {
+        this.label = label;
+    }
+
+    String getLabel() {
+        return label;
+    }
+}
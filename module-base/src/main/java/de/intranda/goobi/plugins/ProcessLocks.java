@@ -0,0 +1,83 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Locks that prevent parallel executions for the same process, for example a manual execution of the step while the automatic execution is still
+ * running. The second execution waits and finds all OIDs assigned afterwards.
+ *
+ * There is one lock per process id, so executions for other processes are never blocked. A lock is removed when no execution uses or waits for it
+ * anymore, so the memory does not grow with the number of processes. The locks are not bound to a thread, because a batch execution prepares and
+ * completes a process in different threads.
+ */
+final class ProcessLocks {
+
+    private static final Map<Integer, ProcessLock> LOCKS = new ConcurrentHashMap<>();
+
+    private ProcessLocks() {
+    }
+
+    /**
+     * Wait until no other execution works on the process and lock it
+     *
+     * @param processId process id
+     * @throws InterruptedException
+     */
+    static void lock(int processId) throws InterruptedException {
+        ProcessLock lock = use(processId);
+        try {
+            lock.semaphore.acquire();
+        } catch (InterruptedException e) {
+            release(processId);
+            throw e;
+        }
+    }
+
+    /**
+     * Lock the process, if no other execution works on it
+     *
+     * @param processId process id
+     * @return true, if the process was locked
+     */
+    static boolean tryLock(int processId) {
+        if (use(processId).semaphore.tryAcquire()) {
+            return true;
+        }
+        release(processId);
+        return false;
+    }
+
+    static void unlock(int processId) {
+        LOCKS.get(processId).semaphore.release();
+        release(processId);
+    }
+
+    /**
+     * @return number of processes that are locked or waited for
+     */
+    static int size() {
+        return LOCKS.size();
+    }
+
+    private static ProcessLock use(int processId) {
+        return LOCKS.compute(processId, (id, lock) -> {
+            ProcessLock used = lock == null ? new ProcessLock() : lock;
+            used.users++;
+            return used;
+        });
+    }
+
+    private static void release(int processId) {
+        LOCKS.computeIfPresent(processId, (id, lock) -> --lock.users == 0 ? null : lock);
+    }
+
+    private static class ProcessLock {
+
+        private final Semaphore semaphore = new Semaphore(1);
+
+        // executions holding or waiting for the lock, guarded by the map
+        private int users;
+    }
+}
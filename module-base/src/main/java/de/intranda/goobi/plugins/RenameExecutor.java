@@ -0,0 +1,108 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Executes a rename plan. The files are moved with a configurable number of parallel threads, as each move is a single metadata operation on the
+ * storage and does not depend on any other move.
+ *
+ * If checksums are configured, each file is read once before it is moved, in the same thread as the move.
+ */
+@Log4j2
+class RenameExecutor implements RenameStrategy {
+
+    // maximum number of failed files listed in the summary
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private final int threads;
+
+    private final ChecksumCollector checksums;
+
+    RenameExecutor(int threads) {
+        this(threads, null);
+    }
+
+    /**
+     * @param threads number of parallel moves
+     * @param checksums collector for the checksums of the moved files or null
+     */
+    RenameExecutor(int threads, ChecksumCollector checksums) {
+        this.threads = Math.max(1, threads);
+        this.checksums = checksums;
+    }
+
+    @Override
+    public List<String> execute(List<FileRename> plan) {
+        if (plan.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        if (threads == 1 || plan.size() == 1) {
+            for (FileRename rename : plan) {
+                move(rename, errors);
+            }
+            return errors;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, plan.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<>(plan.size());
+            for (FileRename rename : plan) {
+                futures.add(executor.submit(() -> move(rename, errors)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            errors.add("Renaming was interrupted");
+        } catch (ExecutionException e) {
+            log.error(e);
+            errors.add(e.getCause().getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+        return errors;
+    }
+
+    private void move(FileRename rename, List<String> errors) {
+        try {
+            String[] digests = checksums == null ? null : checksums.calculate(rename.getSource());
+            StorageProvider.getInstance().move(rename.getSource(), rename.getTarget());
+            if (digests != null) {
+                checksums.add(rename, digests);
+            }
+        } catch (IOException e) {
+            log.error("Cannot rename {}", rename, e);
+            errors.add(rename + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Create a short summary of the errors to be added to the process journal
+     *
+     * @param errors list of error messages
+     * @return summary
+     */
+    static String getErrorSummary(List<String> errors) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(errors.size()).append(" file(s) could not be renamed:");
+        for (int i = 0; i < errors.size() && i < MAX_REPORTED_ERRORS; i++) {
+            sb.append("\n").append(errors.get(i));
+        }
+        if (errors.size() > MAX_REPORTED_ERRORS) {
+            sb.append("\n...");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,293 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Journal of the OIDs assigned to a process and the files that are renamed to these OIDs. The journal is written into the process folder before
+ * any file is moved and removed after the METS file was saved. If a run is interrupted, the next run finishes the pending renames and reuses the
+ * OIDs from the journal instead of requesting new ones.
+ *
+ * Each line contains a type and tab separated values:
+ *
+ * <pre>
+ * main   OID
+ * page   old file name   OID
+ * move   source path     target path
+ * copied source path
+ * state  deferred
+ * request   idempotency key
+ * allocated OID,OID-OID,...
+ * </pre>
+ *
+ * The idempotency key is sent with the OID request. The received OIDs are stored as <code>allocated</code> until they are assigned, so an
+ * execution that is interrupted after the request, or retried by the API client, reuses the same allocation. Consecutive OIDs are stored as a
+ * range with the first and last OID.
+ *
+ * On object storage a rename is a copy followed by a delete. The entries <code>copied</code> are appended as checkpoints after the copies, so an
+ * interrupted run only needs to delete the source objects.
+ *
+ * If the renames are deferred, the journal is kept after the METS file was saved until the renames are executed by a later step or by
+ * {@link DeferredRenamer}.
+ */
+@Log4j2
+class RenameJournal {
+
+    static final String FILENAME = "oid_journal.txt";
+
+    private static final String SEPARATOR = "\t";
+
+    private final Path file;
+
+    @Getter
+    @Setter
+    private String mainOid;
+
+    // old image file name -> OID
+    private final Map<String, String> pageOids = new LinkedHashMap<>();
+
+    @Getter
+    private List<FileRename> renames = new ArrayList<>();
+
+    // the renames are executed later
+    @Getter
+    @Setter
+    private boolean deferred;
+
+    // key of the OID request and the OIDs it returned, until they are assigned
+    @Getter
+    @Setter
+    private String requestKey;
+
+    @Getter
+    @Setter
+    private long[] allocatedOids;
+
+    // source files that were already copied to their target
+    private final Set<Path> copied = ConcurrentHashMap.newKeySet();
+
+    private RenameJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Open the journal of a process. If no journal exists, an empty journal is returned.
+     *
+     * @param processFolder process data directory
+     * @return journal
+     * @throws IOException if an existing journal cannot be read
+     */
+    static RenameJournal open(Path processFolder) throws IOException {
+        RenameJournal journal = new RenameJournal(processFolder.resolve(FILENAME));
+        if (!Files.exists(journal.file)) {
+            return journal;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(journal.file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(SEPARATOR);
+                if (parts.length < ("page".equals(parts[0]) || "move".equals(parts[0]) ? 3 : 2)) {
+                    // the last checkpoint may be incomplete if the server stopped while it was appended
+                    log.warn("Ignore incomplete entry in OID journal {}: {}", journal.file, line);
+                    continue;
+                }
+                switch (parts[0]) {
+                    case "main":
+                        journal.mainOid = parts[1];
+                        break;
+                    case "page":
+                        journal.pageOids.put(parts[1], parts[2]);
+                        break;
+                    case "move":
+                        journal.renames.add(new FileRename(Paths.get(parts[1]), Paths.get(parts[2])));
+                        break;
+                    case "copied":
+                        journal.copied.add(Paths.get(parts[1]));
+                        break;
+                    case "state":
+                        journal.deferred = "deferred".equals(parts[1]);
+                        break;
+                    case "request":
+                        journal.requestKey = parts[1];
+                        break;
+                    case "allocated":
+                        journal.allocatedOids = parseOids(parts[1]);
+                        break;
+                    default:
+                        log.warn("Ignore unknown entry in OID journal {}: {}", journal.file, line);
+                }
+            }
+        }
+        return journal;
+    }
+
+    boolean isEmpty() {
+        return mainOid == null && pageOids.isEmpty() && renames.isEmpty();
+    }
+
+    String getPageOid(String filename) {
+        return pageOids.get(filename);
+    }
+
+    void addPage(String filename, String oid) {
+        pageOids.put(filename, oid);
+    }
+
+    void setRenames(List<FileRename> renames) {
+        this.renames = new ArrayList<>(renames);
+        copied.clear();
+    }
+
+    boolean isCopied(Path source) {
+        return copied.contains(source);
+    }
+
+    /**
+     * Add a checkpoint for files that were copied to their target. The entries are appended to the written journal without rewriting it.
+     *
+     * @param sources source files of the finished copies
+     * @throws IOException
+     */
+    synchronized void addCopied(List<Path> sources) throws IOException {
+        if (sources.isEmpty()) {
+            return;
+        }
+        copied.addAll(sources);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (Path source : sources) {
+                writer.write("copied" + SEPARATOR + source);
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Get all renames that are not finished yet. A rename is finished if the source file does not exist anymore but the target file does.
+     *
+     * @return list of pending renames
+     */
+    List<FileRename> getPendingRenames() {
+        List<FileRename> pending = new ArrayList<>();
+        StorageProvider sp = StorageProvider.getInstance();
+        for (FileRename rename : renames) {
+            if (sp.isFileExists(rename.getSource()) || !sp.isFileExists(rename.getTarget())) {
+                pending.add(rename);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Write the journal. The content is written into a temporary file first and moved atomically, so an interrupted write never leaves a
+     * truncated journal.
+     *
+     * @throws IOException
+     */
+    synchronized void write() throws IOException {
+        Path tmp = file.resolveSibling(FILENAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            if (deferred) {
+                writer.write("state" + SEPARATOR + "deferred");
+                writer.newLine();
+            }
+            if (requestKey != null) {
+                writer.write("request" + SEPARATOR + requestKey);
+                writer.newLine();
+            }
+            if (allocatedOids != null && allocatedOids.length > 0) {
+                writer.write("allocated" + SEPARATOR + formatOids(allocatedOids));
+                writer.newLine();
+            }
+            if (mainOid != null) {
+                writer.write("main" + SEPARATOR + mainOid);
+                writer.newLine();
+            }
+            for (Map.Entry<String, String> entry : pageOids.entrySet()) {
+                writer.write("page" + SEPARATOR + entry.getKey() + SEPARATOR + entry.getValue());
+                writer.newLine();
+            }
+            for (FileRename rename : renames) {
+                writer.write("move" + SEPARATOR + rename.getSource() + SEPARATOR + rename.getTarget());
+                writer.newLine();
+            }
+            for (Path source : copied) {
+                writer.write("copied" + SEPARATOR + source);
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Remove the journal after all work was finished
+     *
+     * @throws IOException
+     */
+    void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Write a list of OIDs, consecutive OIDs are combined to a range like <code>300006252-300006256</code>
+     */
+    static String formatOids(long[] oids) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < oids.length) {
+            int last = i;
+            while (last + 1 < oids.length && oids[last + 1] == oids[last] + 1) {
+                last++;
+            }
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(oids[i]);
+            if (last > i) {
+                sb.append('-').append(oids[last]);
+            }
+            i = last + 1;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Read a list of OIDs written by {@link #formatOids(long[])}
+     */
+    static long[] parseOids(String value) {
+        List<long[]> ranges = new ArrayList<>();
+        int size = 0;
+        for (String part : value.split(",")) {
+            int dash = part.indexOf('-');
+            long first = Long.parseLong(dash == -1 ? part : part.substring(0, dash));
+            long last = dash == -1 ? first : Long.parseLong(part.substring(dash + 1));
+            ranges.add(new long[] { first, last });
+            size += (int) (last - first + 1);
+        }
+        long[] oids = new long[size];
+        int next = 0;
+        for (long[] range : ranges) {
+            for (long oid = range[0]; oid <= range[1]; oid++) {
+                oids[next++] = oid;
+            }
+        }
+        return oids;
+    }
+}
@@ -0,0 +1,96 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plans the renaming of the files that belong to a page.
+ *
+ * All folders are indexed once by the basename of their files, so finding the files of a single page is a map lookup instead of a scan over
+ * every file of every folder.
+ */
+class RenamePlanner {
+
+    // basename -> all files with this basename, in all folders
+    private final Map<String, List<Path>> filesByBasename = new HashMap<>();
+
+    private RenamePlanner() {
+    }
+
+    /**
+     * Index the files of the configured folders by their basename. Each folder is read only once, while its files are added to the index.
+     *
+     * @param processFolder process data directory
+     * @param scope configured folders
+     * @param numberOfPages expected number of files in each validated folder
+     * @return planner for the renames
+     * @throws IOException if a validated folder does not contain one file per page
+     */
+    static RenamePlanner create(Path processFolder, FolderScope scope, int numberOfPages) throws IOException {
+        RenamePlanner planner = new RenamePlanner();
+        List<String> invalidFolders = new ArrayList<>();
+        for (Path folder : scope.findFolders(processFolder)) {
+            int numberOfFiles = scope.forEachFile(folder, planner::add);
+            if (numberOfFiles != numberOfPages && scope.isValidated(processFolder, folder)) {
+                invalidFolders.add(folder.getFileName() + " (" + numberOfFiles + " files)");
+            }
+        }
+        if (!invalidFolders.isEmpty()) {
+            // fail before any file is moved
+            throw new IOException("Expected " + numberOfPages + " files in each validated folder, found " + String.join(", ", invalidFolders));
+        }
+        return planner;
+    }
+
+    /**
+     * Add a file to the index
+     *
+     * @param file file in one of the renamed folders
+     */
+    private void add(Path file) {
+        filesByBasename.computeIfAbsent(getBasename(file.getFileName().toString()), k -> new ArrayList<>(2)).add(file);
+    }
+
+    /**
+     * Get the files of all folders with the given basename
+     *
+     * @param basename file name without extension
+     * @return list of files, never null
+     */
+    List<Path> getFiles(String basename) {
+        return filesByBasename.getOrDefault(basename, Collections.emptyList());
+    }
+
+    /**
+     * Create the rename operations for all files with the old basename. Each file keeps its folder and extension.
+     *
+     * @param oldBasename current file name without extension
+     * @param newBasename new file name without extension
+     * @return list of planned renames
+     */
+    List<FileRename> plan(String oldBasename, String newBasename) {
+        List<Path> files = getFiles(oldBasename);
+        List<FileRename> renames = new ArrayList<>(files.size());
+        for (Path file : files) {
+            String extension = getExtension(file.getFileName().toString());
+            String newFilename = extension.isEmpty() ? newBasename : newBasename + "." + extension;
+            renames.add(new FileRename(file, file.resolveSibling(newFilename)));
+        }
+        return renames;
+    }
+
+    static String getBasename(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot == -1 ? filename : filename.substring(0, dot);
+    }
+
+    static String getExtension(String filename) {
+        int dot = filename.lastIndexOf('.');
+        return dot == -1 ? "" : filename.substring(dot + 1);
+    }
+}
@@ -0,0 +1,40 @@
+package de.intranda.goobi.plugins;
+
+import java.util.List;
+
+import de.sub.goobi.config.ConfigurationHelper;
+
+/**
+ * Strategy to execute a rename plan on a specific kind of storage
+ */
+interface RenameStrategy {
+
+    /**
+     * Move all files of the plan to their new names
+     *
+     * @param plan list of planned renames
+     * @return list of error messages for all files that could not be renamed, empty if all files were renamed
+     */
+    List<String> execute(List<FileRename> plan);
+
+    /**
+     * Get the strategy for the storage of Goobi. The plan is executed when the {@link AdmissionControl} allows it.
+     *
+     * @param config plugin configuration
+     * @param journal journal of the process for checkpoints
+     * @param checksums collector for checksums of the renamed files or null; not used on S3, where files are copied on the server
+     * @return rename strategy
+     */
+    static RenameStrategy create(OidConfiguration config, RenameJournal journal, ChecksumCollector checksums) {
+        RenameStrategy strategy;
+        if (ConfigurationHelper.getInstance().useS3()) {
+            strategy = new S3RenameExecutor(new StorageProviderObjectStore(), journal, config.getS3CopyThreads(), config.getS3BatchSize());
+        } else {
+            strategy = new RenameExecutor(config.getRenameThreads(), checksums);
+        }
+        // the number of processes renaming at the same time is limited for the whole node
+        AdmissionControl admission = AdmissionControl.getInstance();
+        admission.configure(config);
+        return plan -> admission.rename(strategy, plan);
+    }
+}
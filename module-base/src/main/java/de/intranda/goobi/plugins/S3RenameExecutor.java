@@ -0,0 +1,126 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Executes a rename plan on object storage like S3, where each move is a copy of the object followed by a delete.
+ *
+ * The objects are copied first, with a bounded number of parallel server side copies. After each batch a checkpoint with the finished copies is
+ * appended to the journal, so an interrupted run does not copy these objects again. When all copies are finished, the source objects are deleted
+ * with the same number of parallel requests. A source object is only deleted if its copy was successful.
+ */
+@Log4j2
+class S3RenameExecutor implements RenameStrategy {
+
+    private final ObjectStore store;
+
+    private final RenameJournal journal;
+
+    private final int threads;
+
+    private final int batchSize;
+
+    /**
+     * Create an executor
+     *
+     * @param store object storage
+     * @param journal journal for the checkpoints, can be null
+     * @param threads number of parallel copy and delete requests
+     * @param batchSize number of objects copied between two checkpoints
+     */
+    S3RenameExecutor(ObjectStore store, RenameJournal journal, int threads, int batchSize) {
+        this.store = store;
+        this.journal = journal;
+        this.threads = Math.max(1, threads);
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public List<String> execute(List<FileRename> plan) {
+        if (plan.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        List<Path> copied = new ArrayList<>(plan.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, plan.size()));
+        try {
+            // copy all objects, with a checkpoint after each batch
+            for (int from = 0; from < plan.size(); from += batchSize) {
+                List<FileRename> batch = plan.subList(from, Math.min(from + batchSize, plan.size()));
+                List<FileRename> started = new ArrayList<>(batch.size());
+                List<Future<Boolean>> futures = new ArrayList<>(batch.size());
+                for (FileRename rename : batch) {
+                    if (journal != null && journal.isCopied(rename.getSource())) {
+                        copied.add(rename.getSource());
+                    } else {
+                        started.add(rename);
+                        futures.add(executor.submit(() -> copy(rename, errors)));
+                    }
+                }
+                List<Path> checkpoint = new ArrayList<>(started.size());
+                for (int i = 0; i < started.size(); i++) {
+                    if (futures.get(i).get()) {
+                        checkpoint.add(started.get(i).getSource());
+                    }
+                }
+                copied.addAll(checkpoint);
+                if (journal != null) {
+                    try {
+                        journal.addCopied(checkpoint);
+                    } catch (IOException e) {
+                        // the copies are repeated after an interruption, nothing else is lost
+                        log.warn("Cannot write checkpoint into OID journal", e);
+                    }
+                }
+            }
+
+            // delete the source objects
+            List<Future<?>> deletions = new ArrayList<>(copied.size());
+            for (Path object : copied) {
+                deletions.add(executor.submit(() -> delete(object, errors)));
+            }
+            for (Future<?> future : deletions) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            errors.add("Renaming was interrupted");
+        } catch (ExecutionException e) {
+            log.error(e);
+            errors.add(e.getCause().getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+        return errors;
+    }
+
+    private boolean copy(FileRename rename, List<String> errors) {
+        try {
+            store.copy(rename.getSource(), rename.getTarget());
+            return true;
+        } catch (IOException e) {
+            log.error("Cannot copy {}", rename, e);
+            errors.add(rename + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void delete(Path object, List<String> errors) {
+        try {
+            store.delete(object);
+        } catch (IOException e) {
+            log.error("Cannot delete {}", object, e);
+            errors.add("Cannot delete " + object + ": " + e.getMessage());
+        }
+    }
+}
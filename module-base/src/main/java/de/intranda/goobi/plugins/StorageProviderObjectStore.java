@@ -0,0 +1,23 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import de.sub.goobi.helper.StorageProvider;
+
+/**
+ * Object storage access through the storage provider of Goobi. On S3 the storage provider copies objects on the server side and deletes one object
+ * per request.
+ */
+class StorageProviderObjectStore implements ObjectStore {
+
+    @Override
+    public void copy(Path source, Path target) throws IOException {
+        StorageProvider.getInstance().copyFile(source, target);
+    }
+
+    @Override
+    public void delete(Path object) throws IOException {
+        StorageProvider.getInstance().deleteFile(object);
+    }
+}
@@ -0,0 +1,76 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class AdmissionControlTest {
+
+    @Test
+    public void testTokenBucket() {
+        AdmissionControl admission = new AdmissionControl();
+        admission.configure(10, 2, 0);
+        long now = System.nanoTime();
+        // the burst is sent immediately
+        assertEquals(0, admission.reserveRequest(now));
+        assertEquals(0, admission.reserveRequest(now));
+        // further requests are spread to 10 per second
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), admission.reserveRequest(now), 1000);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), admission.reserveRequest(now), 1000);
+        // after one second the bucket is full again
+        long later = now + TimeUnit.SECONDS.toNanos(1);
+        assertEquals(0, admission.reserveRequest(later));
+    }
+
+    @Test
+    public void testUnlimited() {
+        AdmissionControl admission = new AdmissionControl();
+        admission.configure(0, 1, 0);
+        long now = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, admission.reserveRequest(now));
+        }
+    }
+
+    @Test
+    public void testRenameJobs() throws Exception {
+        AdmissionControl admission = new AdmissionControl();
+        admission.configure(0, 1, 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        RenameStrategy strategy = plan -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return Collections.emptyList();
+        };
+        List<FileRename> plan = Collections.singletonList(new FileRename(null, null));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> admission.rename(strategy, plan)));
+            }
+            for (Future<List<String>> result : results) {
+                assertTrue(result.get().isEmpty());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(maxRunning.get() <= 2);
+    }
+}
@@ -0,0 +1,59 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ApiCallPolicyTest {
+
+    @Test
+    public void testBackoff() {
+        ApiCallPolicy policy = new ApiCallPolicy("test");
+        policy.configure(10, 100, 1000, 0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.getBackoff(1) <= 100);
+            assertTrue(policy.getBackoff(3) <= 400);
+            assertTrue(policy.getBackoff(40) <= 1000);
+        }
+    }
+
+    @Test
+    public void testHedging() throws Exception {
+        ApiCallPolicy policy = new ApiCallPolicy("test");
+        policy.configure(1, 0, 0, 50);
+        // fast calls to learn the response times
+        for (int i = 0; i < ApiCallPolicy.MIN_SAMPLES; i++) {
+            policy.attempt(() -> "fast");
+        }
+        // the first call hangs, the hedged second call answers
+        AtomicInteger calls = new AtomicInteger();
+        List<String> discarded = new CopyOnWriteArrayList<>();
+        long start = System.currentTimeMillis();
+        String result = policy.attempt(() -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "slow";
+            }
+            return "hedged";
+        }, discarded::add);
+        assertEquals("hedged", result);
+        assertEquals(2, calls.get());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+
+        // the late response of the first call is reported as discarded
+        for (int i = 0; i < 100 && discarded.isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(Collections.singletonList("slow"), discarded);
+    }
+}
@@ -0,0 +1,127 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.goobi.beans.Process;
+import org.goobi.beans.Step;
+import org.goobi.production.enums.PluginReturnValue;
+import org.junit.Test;
+
+import de.sub.goobi.helper.enums.StepStatus;
+
+public class AsyncStepRunnerTest {
+
+    /**
+     * Plugin that waits until it is released
+     */
+    private static class BlockingPlugin extends OidStepPlugin {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Step step = new Step();
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger runs = new AtomicInteger();
+
+        BlockingPlugin(int processId) {
+            Process process = new Process();
+            process.setId(processId);
+            step.setTitel("OID creation");
+            step.setProzess(process);
+            step.setBearbeitungsstatusEnum(StepStatus.INWORK);
+        }
+
+        @Override
+        public Step getStep() {
+            return step;
+        }
+
+        @Override
+        PluginReturnValue runSynchronously() {
+            runs.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return PluginReturnValue.ERROR;
+            }
+            return PluginReturnValue.FINISH;
+        }
+    }
+
+    /**
+     * Runner that records the results instead of closing the steps
+     */
+    private static class RecordingRunner extends AsyncStepRunner {
+
+        private final Map<Integer, PluginReturnValue> results = new ConcurrentHashMap<>();
+
+        RecordingRunner(int threads, int queueSize) {
+            super(threads, queueSize);
+        }
+
+        @Override
+        Step loadStep(Step step) {
+            return step;
+        }
+
+        @Override
+        void updateStep(Step step, PluginReturnValue result) {
+            results.put(step.getProzess().getId(), result);
+        }
+    }
+
+    @Test
+    public void testSubmit() throws Exception {
+        RecordingRunner runner = new RecordingRunner(2, 10);
+        BlockingPlugin plugin = new BlockingPlugin(1001);
+        assertEquals(PluginReturnValue.WAIT, runner.submit(plugin));
+        // the process is already queued
+        assertEquals(PluginReturnValue.WAIT, runner.submit(new BlockingPlugin(1001)));
+
+        plugin.release.countDown();
+        assertTrue(runner.shutdownAndWait(10));
+        assertEquals(1, plugin.runs.get());
+        assertEquals(PluginReturnValue.FINISH, runner.results.get(1001));
+    }
+
+    @Test
+    public void testQueueFull() throws Exception {
+        RecordingRunner runner = new RecordingRunner(1, 1);
+        BlockingPlugin running = new BlockingPlugin(2001);
+        BlockingPlugin queued = new BlockingPlugin(2002);
+        assertEquals(PluginReturnValue.WAIT, runner.submit(running));
+        assertEquals(PluginReturnValue.WAIT, runner.submit(queued));
+
+        // no space left, the caller executes the plugin itself
+        BlockingPlugin rejected = new BlockingPlugin(2003);
+        rejected.release.countDown();
+        assertEquals(PluginReturnValue.FINISH, runner.submit(rejected));
+        assertEquals(1, rejected.runs.get());
+
+        running.release.countDown();
+        queued.release.countDown();
+        assertTrue(runner.shutdownAndWait(10));
+        assertEquals(2, runner.results.size());
+    }
+
+    @Test
+    public void testStepClosedManually() throws Exception {
+        RecordingRunner runner = new RecordingRunner(1, 10);
+        BlockingPlugin plugin = new BlockingPlugin(3001);
+        assertEquals(PluginReturnValue.WAIT, runner.submit(plugin));
+
+        // the step was executed and closed manually while the job was running
+        plugin.getStep().setBearbeitungsstatusEnum(StepStatus.DONE);
+        plugin.release.countDown();
+        assertTrue(runner.shutdownAndWait(10));
+        assertEquals(1, plugin.runs.get());
+        assertFalse(runner.results.containsKey(3001));
+    }
+}
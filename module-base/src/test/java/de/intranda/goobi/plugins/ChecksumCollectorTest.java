@@ -0,0 +1,76 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChecksumCollectorTest {
+
+    private static final String SHA256_ABC = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    private static final String MD5_ABC = "900150983cd24fb0d6963f7d28e17f72";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCalculate() throws Exception {
+        Path file = folder.newFile("abc.txt").toPath();
+        Files.write(file, "abc".getBytes(StandardCharsets.UTF_8));
+        ChecksumCollector collector = new ChecksumCollector(Arrays.asList("SHA-256", "MD5"));
+        assertArrayEquals(new String[] { SHA256_ABC, MD5_ABC }, collector.calculate(file));
+    }
+
+    @Test(expected = NoSuchAlgorithmException.class)
+    public void testUnknownAlgorithm() throws Exception {
+        new ChecksumCollector(Collections.singletonList("CRC-42"));
+    }
+
+    @Test
+    public void testWriteManifest() throws Exception {
+        Path processFolder = folder.newFolder("1").toPath();
+        Path media = Files.createDirectories(processFolder.resolve("images/00469418X_media"));
+        Files.write(media.resolve("00000002.jpg"), "abc".getBytes(StandardCharsets.UTF_8));
+
+        // existing manifest with an old name of the renamed file and another file
+        Path manifest = Files.createDirectories(processFolder.resolve(ChecksumCollector.FOLDER).resolve("images")).resolve("00469418X_media.sha256");
+        Files.write(manifest, Arrays.asList("0000  00000002.jpg", "1111  300000001.jpg"));
+
+        ChecksumCollector collector = new ChecksumCollector(Collections.singletonList("SHA-256"));
+        collector.add(new FileRename(media.resolve("00000002.jpg"), media.resolve("300000010.jpg")), collector.calculate(media.resolve("00000002.jpg")));
+        collector.write(processFolder);
+
+        List<String> lines = Files.readAllLines(manifest);
+        assertEquals(Arrays.asList("1111  300000001.jpg", SHA256_ABC + "  300000010.jpg"), lines);
+    }
+
+    @Test
+    public void testFoldersWithSameName() throws Exception {
+        Path processFolder = folder.newFolder("1").toPath();
+        Path images = Files.createDirectories(processFolder.resolve("images/scans"));
+        Path ocr = Files.createDirectories(processFolder.resolve("ocr/scans"));
+        Files.write(images.resolve("00000001.tif"), "abc".getBytes(StandardCharsets.UTF_8));
+        Files.write(ocr.resolve("00000001.xml"), "abc".getBytes(StandardCharsets.UTF_8));
+
+        ChecksumCollector collector = new ChecksumCollector(Collections.singletonList("MD5"));
+        collector.add(new FileRename(images.resolve("00000001.tif"), images.resolve("300000010.tif")), collector.calculate(images.resolve("00000001.tif")));
+        collector.add(new FileRename(ocr.resolve("00000001.xml"), ocr.resolve("300000010.xml")), collector.calculate(ocr.resolve("00000001.xml")));
+        collector.write(processFolder);
+
+        // each folder keeps its own manifest
+        Path manifests = processFolder.resolve(ChecksumCollector.FOLDER);
+        assertEquals(Collections.singletonList(MD5_ABC + "  300000010.tif"), Files.readAllLines(manifests.resolve("images/scans.md5")));
+        assertEquals(Collections.singletonList(MD5_ABC + "  300000010.xml"), Files.readAllLines(manifests.resolve("ocr/scans.md5")));
+    }
+}
@@ -0,0 +1,69 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ugh.dl.ContentFile;
+import ugh.dl.DigitalDocument;
+import ugh.dl.FileSet;
+
+public class ContentFileIndexTest {
+
+    private static final String MASTER = "file:///opt/digiverso/metadata/1/images/00469418X_master/";
+    private static final String MEDIA = "file:///opt/digiverso/metadata/1/images/00469418X_media/";
+
+    @Test
+    public void testRelocate() {
+        ContentFile master = createFile(MASTER + "00000001.tif");
+        ContentFile media = createFile(MEDIA + "00000001.tif");
+        ContentFile other = createFile(MEDIA + "00000002.tif");
+        ContentFileIndex index = new ContentFileIndex(createDocument(master, media, other));
+
+        // the files of all folders are found by their file name
+        index.relocate("00000001.tif", "file://300006253.tif");
+        assertEquals("file://300006253.tif", master.getLocation());
+        assertEquals("file://300006253.tif", media.getLocation());
+        assertEquals(MEDIA + "00000002.tif", other.getLocation());
+
+        // the index contains the new file name
+        index.relocate("300006253.tif", "file://300006254.tif");
+        assertEquals("file://300006254.tif", master.getLocation());
+        index.relocate("00000001.tif", "file://300006255.tif");
+        assertEquals("file://300006254.tif", media.getLocation());
+    }
+
+    @Test
+    public void testCaseSensitive() {
+        ContentFile upper = createFile(MASTER + "00000001.TIF");
+        ContentFile lower = createFile(MASTER + "00000001.tif");
+        ContentFileIndex index = new ContentFileIndex(createDocument(upper, lower));
+
+        // file names are compared like on the file system
+        index.relocate("00000001.tif", "file://300006253.tif");
+        assertEquals(MASTER + "00000001.TIF", upper.getLocation());
+        assertEquals("file://300006253.tif", lower.getLocation());
+    }
+
+    @Test
+    public void testGetFilename() {
+        assertEquals("00000001.tif", ContentFileIndex.getFilename(MASTER + "00000001.tif"));
+        assertEquals("00000001.tif", ContentFileIndex.getFilename("00000001.tif"));
+    }
+
+    private static ContentFile createFile(String location) {
+        ContentFile cf = new ContentFile();
+        cf.setLocation(location);
+        return cf;
+    }
+
+    private static DigitalDocument createDocument(ContentFile... files) {
+        FileSet fileSet = new FileSet();
+        for (ContentFile cf : files) {
+            fileSet.addFile(cf);
+        }
+        DigitalDocument dd = new DigitalDocument();
+        dd.setFileSet(fileSet);
+        return dd;
+    }
+}
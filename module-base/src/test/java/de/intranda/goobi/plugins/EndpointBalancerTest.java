@@ -0,0 +1,160 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class EndpointBalancerTest {
+
+    @Test
+    public void testRetry() throws Exception {
+        ApiCallPolicy policy = new ApiCallPolicy("test");
+        policy.configure(3, 1, 10, 0);
+        EndpointBalancer balancer = new EndpointBalancer(Collections.singletonList(policy));
+        AtomicInteger calls = new AtomicInteger();
+        String result = balancer.execute(url -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+            return "ok";
+        });
+        assertEquals("ok", result);
+        assertEquals(3, calls.get());
+
+        calls.set(0);
+        try {
+            balancer.execute(url -> {
+                calls.incrementAndGet();
+                throw new IOException("timeout");
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("timeout", e.getMessage());
+        }
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        ApiCallPolicy policy = new ApiCallPolicy("test");
+        policy.configure(1, 0, 0, 0);
+        policy.getCircuitBreaker().configure(2, 50);
+        EndpointBalancer balancer = new EndpointBalancer(Collections.singletonList(policy));
+        AtomicInteger calls = new AtomicInteger();
+        EndpointBalancer.EndpointCall<String> failing = url -> {
+            calls.incrementAndGet();
+            throw new IOException("connection refused");
+        };
+        for (int i = 0; i < 3; i++) {
+            try {
+                balancer.execute(failing);
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+        }
+        // the third call fails without calling the API
+        assertEquals(2, calls.get());
+        assertEquals(CircuitBreaker.State.OPEN, policy.getCircuitBreaker().getState());
+
+        // after the open duration a trial call closes the circuit again
+        Thread.sleep(60);
+        assertEquals("ok", balancer.execute(url -> "ok"));
+        assertEquals(CircuitBreaker.State.CLOSED, policy.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void testFailover() throws Exception {
+        ApiCallPolicy a = new ApiCallPolicy("a");
+        a.configure(1, 0, 0, 0);
+        ApiCallPolicy b = new ApiCallPolicy("b");
+        b.configure(1, 0, 0, 0);
+        EndpointBalancer balancer = new EndpointBalancer(Arrays.asList(a, b));
+
+        List<String> calls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String result = balancer.execute(url -> {
+                calls.add(url);
+                if ("a".equals(url)) {
+                    throw new IOException("connection refused");
+                }
+                return url;
+            });
+            assertEquals("b", result);
+        }
+        // the failed endpoint is avoided afterwards
+        assertTrue(Collections.frequency(calls, "a") <= 1);
+        assertEquals(10, Collections.frequency(calls, "b"));
+    }
+
+    @Test
+    public void testFailoverOnTimeout() throws Exception {
+        ApiCallPolicy a = new ApiCallPolicy("a");
+        a.configure(1, 0, 0, 0);
+        ApiCallPolicy b = new ApiCallPolicy("b");
+        b.configure(1, 0, 0, 0);
+        EndpointBalancer balancer = new EndpointBalancer(Arrays.asList(a, b));
+
+        // a hanging endpoint is left for the other one within the same call
+        for (int i = 0; i < 10; i++) {
+            assertEquals("b", balancer.execute(url -> {
+                if ("a".equals(url)) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+                return url;
+            }));
+        }
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        AdmissionControl admission = new AdmissionControl();
+        admission.configure(10, 1, 0);
+        ApiCallPolicy policy = new ApiCallPolicy("test");
+        policy.configure(1, 0, 0, 0);
+        EndpointBalancer balancer = new EndpointBalancer(Collections.singletonList(policy), admission);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++) {
+            balancer.execute(url -> "ok");
+        }
+        // the calls are spread to 10 per second, but the waiting time is not measured as response time
+        assertTrue(System.currentTimeMillis() - start >= 250);
+        assertTrue(policy.getAverageLatency() < 50);
+    }
+
+    @Test
+    public void testAllEndpointsDown() throws Exception {
+        ApiCallPolicy a = new ApiCallPolicy("a");
+        a.configure(3, 0, 0, 0);
+        a.getCircuitBreaker().configure(1, 60000);
+        ApiCallPolicy b = new ApiCallPolicy("b");
+        b.configure(3, 0, 0, 0);
+        b.getCircuitBreaker().configure(1, 60000);
+        EndpointBalancer balancer = new EndpointBalancer(Arrays.asList(a, b));
+
+        List<String> calls = new ArrayList<>();
+        try {
+            balancer.execute(url -> {
+                calls.add(url);
+                throw new IOException("connection refused");
+            });
+            fail();
+        } catch (IOException e) {
+            assertEquals("No OID API endpoint is available, all circuit breakers are open", e.getMessage());
+        }
+        // each endpoint was called once, then both circuits were open
+        assertEquals(2, calls.size());
+        assertEquals(CircuitBreaker.State.OPEN, a.getCircuitBreaker().getState());
+        assertEquals(CircuitBreaker.State.OPEN, b.getCircuitBreaker().getState());
+    }
+}
@@ -0,0 +1,51 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FolderScopeTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFindFolders() throws Exception {
+        Path processFolder = folder.newFolder("1").toPath();
+        Path master = Files.createDirectories(processFolder.resolve("images/00469418X_master"));
+        Path media = Files.createDirectories(processFolder.resolve("images/00469418X_media"));
+        Files.createDirectories(processFolder.resolve("images/00469418X_source"));
+        Files.createDirectories(processFolder.resolve("export/00469418X_pdf"));
+
+        FolderScope scope = new FolderScope(Arrays.asList("images/*", "ocr/*"), Collections.singletonList("images/*_media"),
+                Collections.singletonList("images/*_source"), false);
+        assertEquals(Arrays.asList(master, media), new ArrayList<>(scope.findFolders(processFolder)));
+        assertTrue(scope.isValidated(processFolder, media));
+        assertFalse(scope.isValidated(processFolder, master));
+    }
+
+    @Test
+    public void testForEachFile() throws Exception {
+        Path media = folder.newFolder("00469418X_media").toPath();
+        Files.createFile(media.resolve("00000001.jpg"));
+        Files.createFile(media.resolve("00000002.jpg"));
+        Files.createFile(media.resolve(".hidden"));
+        Files.createDirectories(media.resolve("thumbs"));
+
+        FolderScope scope = new FolderScope(Collections.singletonList("*"), Collections.emptyList(), Collections.emptyList(), false);
+        List<Path> files = new ArrayList<>();
+        assertEquals(2, scope.forEachFile(media, files::add));
+        assertEquals(2, files.size());
+    }
+}
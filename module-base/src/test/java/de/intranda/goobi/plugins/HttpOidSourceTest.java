@@ -0,0 +1,91 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.SocketTimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HttpOidSourceTest {
+
+    private OidServiceStub stub;
+
+    @Before
+    public void setUp() throws Exception {
+        stub = new OidServiceStub();
+    }
+
+    @After
+    public void tearDown() {
+        stub.close();
+    }
+
+    @Test
+    public void testChunks() throws Exception {
+        HttpOidSource source = new HttpOidSource(stub.getUrl(), null, null, "Accept", "application/json", 10);
+        long[] oids = source.getOids(25);
+        assertEquals(25, oids.length);
+        assertEquals(3, stub.getRequests());
+        for (int i = 1; i < oids.length; i++) {
+            assertTrue(oids[i] > oids[i - 1]);
+        }
+    }
+
+    @Test
+    public void testRanges() throws Exception {
+        HttpOidSource source = new HttpOidSource(stub.getUrl(), null, null, "Accept", OidServiceStub.RANGES_TYPE, 20000);
+        long[] oids = source.getOids(20000);
+        assertEquals(1, stub.getRequests());
+        for (int i = 0; i < oids.length; i++) {
+            assertEquals(OidServiceStub.FIRST_OID + i, oids[i]);
+        }
+    }
+
+    @Test
+    public void testRetryFailedChunks() throws Exception {
+        stub.setErrorRate(0.3);
+        ApiCallPolicy policy = new ApiCallPolicy(stub.getUrl());
+        policy.configure(50, 0, 0, 0);
+        HttpOidSource source = new HttpOidSource(stub.getUrl(), null, null, "Accept", "application/json", 10, policy, null);
+        long[] oids = source.getOids(100);
+        // failed requests do not use any OIDs, so all OIDs were handed out exactly once
+        assertEquals(100, stub.getIssuedOids());
+        assertEquals(10 + stub.getErrors(), stub.getRequests());
+        for (int i = 0; i < oids.length; i++) {
+            assertEquals(OidServiceStub.FIRST_OID + i, oids[i]);
+        }
+    }
+
+    @Test
+    public void testRetryTimeouts() throws Exception {
+        // the service hangs longer than the socket timeout of one second
+        stub.setLatency(1500, 0);
+        OidHttpClient.configure(20, 10, 30, 1, 1);
+        try {
+            ApiCallPolicy policy = new ApiCallPolicy(stub.getUrl());
+            policy.configure(2, 0, 0, 0);
+            // every failure opens the circuit, so the second attempt is a trial call
+            policy.getCircuitBreaker().configure(1, 0);
+            HttpOidSource source = new HttpOidSource(stub.getUrl(), null, null, "Accept", "application/json", 10, policy, null);
+            try {
+                source.getOids(5);
+                fail();
+            } catch (SocketTimeoutException e) {
+                // expected
+            }
+            // the timeout was retried and the failed trial call opened the circuit again
+            assertEquals(2, stub.getRequests());
+            assertEquals(CircuitBreaker.State.OPEN, policy.getCircuitBreaker().getState());
+
+            stub.setLatency(0, 0);
+            assertEquals(5, source.getOids(5).length);
+            assertEquals(CircuitBreaker.State.CLOSED, policy.getCircuitBreaker().getState());
+        } finally {
+            OidHttpClient.configure(20, 10, 30, 10, 60);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ugh.dl.DocStruct;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.fileformats.mets.MetsMods;
+
+public class MetsStreamPatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String resourcesFolder;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+    }
+
+    private Path copy(String name) throws Exception {
+        Path target = folder.newFolder().toPath().resolve("meta.xml");
+        Files.copy(Paths.get(resourcesFolder, name), target);
+        return target;
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        MetsStreamPatcher patcher = MetsStreamPatcher.scan(copy("meta.xml"));
+        assertTrue(patcher.isSupported());
+        assertEquals("RM0166F01-0000001", patcher.getMainOid());
+        assertEquals(5, patcher.getPages().size());
+        assertEquals("PHYS_0001", patcher.getPages().get(0).getId());
+        assertEquals("00000001.jpg", patcher.getPages().get(0).getFilename());
+        assertNull(patcher.getPages().get(0).getOid());
+    }
+
+    @Test
+    public void testUnsupported() throws Exception {
+        // file without pages
+        MetsStreamPatcher patcher = MetsStreamPatcher.scan(copy("meta2.xml"));
+        assertFalse(patcher.isSupported());
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        Path metsFile = copy("meta.xml");
+        MetsStreamPatcher patcher = MetsStreamPatcher.scan(metsFile);
+        patcher.setMainOid("300006252");
+        List<MetsStreamPatcher.Page> pages = patcher.getPages();
+        for (int i = 0; i < pages.size(); i++) {
+            String oid = String.valueOf(300006253 + i);
+            patcher.setPageOid(pages.get(i), oid, "file://" + oid + ".jpg");
+        }
+        patcher.write(2);
+        // a backup of the original file is kept next to it
+        try (Stream<Path> files = Files.list(metsFile.getParent())) {
+            assertTrue(files.anyMatch(f -> f.getFileName().toString().matches("meta\\.xml\\..+") && !f.toString().endsWith(".tmp")));
+        }
+
+        // the patched file must be readable with UGH
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "vd18.xml");
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(metsFile.toString());
+        DocStruct logical = ff.getDigitalDocument().getLogicalDocStruct();
+        assertEquals("300006252", logical.getAllMetadataByType(prefs.getMetadataTypeByName("CatalogIDDigital")).get(0).getValue());
+        DocStruct page = ff.getDigitalDocument().getPhysicalDocStruct().getAllChildren().get(0);
+        assertEquals("300006253", page.getAllMetadataByType(prefs.getMetadataTypeByName("_urn")).get(0).getValue());
+        assertEquals("300006253.jpg", page.getImageName());
+
+        // a second scan finds the new OIDs
+        MetsStreamPatcher rescanned = MetsStreamPatcher.scan(metsFile);
+        assertEquals("300006252", rescanned.getMainOid());
+        assertEquals("300006257", rescanned.getPages().get(4).getOid());
+        assertEquals("300006257.jpg", rescanned.getPages().get(4).getFilename());
+    }
+}
@@ -0,0 +1,319 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.easymock.EasyMock;
+import org.goobi.beans.Process;
+import org.goobi.beans.Project;
+import org.goobi.beans.Ruleset;
+import org.goobi.beans.Step;
+import org.goobi.production.enums.PluginReturnValue;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.powermock.api.easymock.PowerMock;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.Helper;
+import de.sub.goobi.helper.VariableReplacer;
+import de.sub.goobi.helper.enums.StepStatus;
+import de.sub.goobi.metadaten.MetadatenHelper;
+import de.sub.goobi.persistence.managers.MetadataManager;
+import de.sub.goobi.persistence.managers.ProcessManager;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.Prefs;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * End-to-end load test: many concurrent executions of the plugin for synthetic processes, with the OID API replaced by the local
+ * {@link OidServiceStub}. The test reports throughput, latency percentiles and checks that no OID was assigned twice.
+ *
+ * The test is skipped in normal builds and started with
+ *
+ * <pre>
+ * mvn test -Dtest=OidLoadTest -Doid.loadtest=true -Doid.loadtest.processes=500 -Doid.loadtest.concurrency=32
+ * </pre>
+ *
+ * Further parameters: <code>oid.loadtest.pages</code>, <code>oid.loadtest.latency</code>, <code>oid.loadtest.jitter</code> (milliseconds),
+ * <code>oid.loadtest.errorRate</code> (0 to 1) and <code>oid.loadtest.streaming</code>.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ MetadatenHelper.class, VariableReplacer.class, ConfigurationHelper.class, ProcessManager.class, MetadataManager.class,
+        Helper.class })
+@PowerMockIgnore({ "javax.management.*", "javax.net.ssl.*", "jdk.internal.reflect.*", "com.sun.org.apache.xerces.*", "javax.xml.*", "org.xml.*",
+        "org.w3c.*", "javax.crypto.*", "javax.crypto.JceSecurity", "com.sun.net.httpserver.*" })
+public class OidLoadTest {
+
+    private static final String TITLE = "00469418X";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final int processes = Integer.getInteger("oid.loadtest.processes", 100);
+    private final int pages = Integer.getInteger("oid.loadtest.pages", 50);
+    private final int concurrency = Integer.getInteger("oid.loadtest.concurrency", 16);
+    private final long latency = Long.getLong("oid.loadtest.latency", 50);
+    private final long jitter = Long.getLong("oid.loadtest.jitter", 50);
+    private final double errorRate = Double.parseDouble(System.getProperty("oid.loadtest.errorRate", "0.05"));
+    private final boolean streaming = Boolean.getBoolean("oid.loadtest.streaming");
+
+    private OidServiceStub stub;
+    private Path metadataFolder;
+    private Prefs prefs;
+    private Ruleset ruleset;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue("Load test is disabled, enable it with -Doid.loadtest=true", Boolean.getBoolean("oid.loadtest"));
+        String resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+        System.setProperty("log4j.configurationFile", resourcesFolder + "log4j2.xml");
+
+        stub = new OidServiceStub();
+        stub.setLatency(latency, jitter);
+        stub.setErrorRate(errorRate);
+
+        metadataFolder = folder.newFolder("metadata").toPath();
+        Path configFolder = folder.newFolder("config").toPath();
+        writeConfiguration(configFolder);
+
+        PowerMock.mockStatic(ConfigurationHelper.class);
+        ConfigurationHelper configurationHelper = EasyMock.createMock(ConfigurationHelper.class);
+        EasyMock.expect(ConfigurationHelper.getInstance()).andReturn(configurationHelper).anyTimes();
+        EasyMock.expect(configurationHelper.getMetsEditorLockingTime()).andReturn(1800000l).anyTimes();
+        EasyMock.expect(configurationHelper.isAllowWhitespacesInFolder()).andReturn(false).anyTimes();
+        EasyMock.expect(configurationHelper.useS3()).andReturn(false).anyTimes();
+        EasyMock.expect(configurationHelper.isUseProxy()).andReturn(false).anyTimes();
+        EasyMock.expect(configurationHelper.getGoobiContentServerTimeOut()).andReturn(60000).anyTimes();
+        EasyMock.expect(configurationHelper.getMetadataFolder()).andReturn(metadataFolder.toString() + "/").anyTimes();
+        EasyMock.expect(configurationHelper.getProcessImagesMainDirectoryName()).andReturn(TITLE + "_media").anyTimes();
+        EasyMock.expect(configurationHelper.isUseMasterDirectory()).andReturn(true).anyTimes();
+        EasyMock.expect(configurationHelper.getConfigurationFolder()).andReturn(configFolder.toString() + "/").anyTimes();
+        EasyMock.expect(configurationHelper.getNumberOfMetaBackups()).andReturn(0).anyTimes();
+        EasyMock.replay(configurationHelper);
+        PowerMock.replay(ConfigurationHelper.class);
+
+        PowerMock.mockStatic(VariableReplacer.class);
+        EasyMock.expect(VariableReplacer.simpleReplace(EasyMock.anyString(), EasyMock.anyObject())).andReturn(TITLE + "_media").anyTimes();
+        PowerMock.replay(VariableReplacer.class);
+
+        prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "vd18.xml");
+
+        // every read gets its own file format, the executions run in parallel
+        PowerMock.mockStatic(MetadatenHelper.class);
+        EasyMock.expect(MetadatenHelper.getMetaFileType(EasyMock.anyString())).andReturn("mets").anyTimes();
+        EasyMock.expect(MetadatenHelper.getFileformatByName(EasyMock.anyString(), EasyMock.anyObject()))
+                .andAnswer(() -> new MetsMods(prefs))
+                .anyTimes();
+        EasyMock.expect(MetadatenHelper.getMetadataOfFileformat(EasyMock.anyObject(), EasyMock.anyBoolean()))
+                .andReturn(Collections.emptyMap())
+                .anyTimes();
+        PowerMock.replay(MetadatenHelper.class);
+
+        PowerMock.mockStatic(MetadataManager.class);
+        MetadataManager.updateMetadata(EasyMock.anyInt(), EasyMock.anyObject());
+        EasyMock.expectLastCall().anyTimes();
+        MetadataManager.updateJSONMetadata(EasyMock.anyInt(), EasyMock.anyObject());
+        EasyMock.expectLastCall().anyTimes();
+        PowerMock.replay(MetadataManager.class);
+
+        PowerMock.mockStaticPartial(Helper.class, "addMessageToProcessJournal");
+        Helper.addMessageToProcessJournal(EasyMock.anyInt(), EasyMock.anyObject(), EasyMock.anyString(), EasyMock.anyString());
+        EasyMock.expectLastCall().anyTimes();
+        PowerMock.replay(Helper.class);
+
+        ruleset = PowerMock.createMock(Ruleset.class);
+        EasyMock.expect(ruleset.getPreferences()).andReturn(prefs).anyTimes();
+        PowerMock.replay(ruleset);
+    }
+
+    @After
+    public void tearDown() {
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    @Test
+    public void testConcurrentExecutions() throws Exception {
+        List<Step> steps = new ArrayList<>(processes);
+        for (int i = 1; i <= processes; i++) {
+            steps.add(createProcess(i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        List<Future<Long>> durations = new ArrayList<>(processes);
+        Map<PluginReturnValue, Integer> results = Collections.synchronizedMap(new EnumMap<>(PluginReturnValue.class));
+        long start = System.nanoTime();
+        for (Step step : steps) {
+            durations.add(executor.submit(() -> {
+                OidStepPlugin plugin = new OidStepPlugin();
+                plugin.initialize(step, "");
+                long begin = System.nanoTime();
+                PluginReturnValue result = plugin.run();
+                results.merge(result, 1, Integer::sum);
+                return System.nanoTime() - begin;
+            }));
+        }
+        long[] millis = new long[processes];
+        for (int i = 0; i < processes; i++) {
+            millis[i] = TimeUnit.NANOSECONDS.toMillis(durations.get(i).get());
+        }
+        long wallTime = System.nanoTime() - start;
+        executor.shutdown();
+        Arrays.sort(millis);
+
+        // every OID must be used exactly once
+        Set<String> oids = new HashSet<>();
+        int assigned = 0;
+        for (int i = 1; i <= processes; i++) {
+            for (String oid : readAssignedOids(metadataFolder.resolve(String.valueOf(i)))) {
+                oids.add(oid);
+                assigned++;
+            }
+        }
+
+        System.out.printf("OID load test: %d processes with %d pages, %d parallel executions, API latency %d+%d ms, error rate %.2f%n", processes,
+                pages, concurrency, latency, jitter, errorRate);
+        System.out.printf("  results:     %s%n", results);
+        System.out.printf("  throughput:  %.1f processes/s%n", processes / (wallTime / 1e9));
+        System.out.printf("  latency:     p50 %d ms, p99 %d ms, max %d ms%n", percentile(millis, 50), percentile(millis, 99), millis[processes - 1]);
+        System.out.printf("  API:         %d requests, %d errors, %d OIDs issued%n", stub.getRequests(), stub.getErrors(), stub.getIssuedOids());
+        System.out.printf("  OIDs:        %d assigned, %d duplicates%n", assigned, assigned - oids.size());
+
+        assertEquals(Integer.valueOf(processes), results.get(PluginReturnValue.FINISH));
+        assertEquals(processes * (pages + 1), assigned);
+        assertEquals(assigned, oids.size());
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+    }
+
+    private void writeConfiguration(Path configFolder) throws IOException {
+        String xml = "<config_plugin>\n"
+                + "    <url>" + stub.getUrl() + "</url>\n"
+                + "    <headerparam>Accept</headerparam>\n"
+                + "    <headerValue>application/json</headerValue>\n"
+                + "    <streamingMets>" + streaming + "</streamingMets>\n"
+                + "    <http>\n"
+                + "        <maxConnections>" + Math.max(20, concurrency) + "</maxConnections>\n"
+                + "        <maxConnectionsPerRoute>" + Math.max(10, concurrency) + "</maxConnectionsPerRoute>\n"
+                + "    </http>\n"
+                + "    <retry>\n"
+                + "        <attempts>10</attempts>\n"
+                + "        <initialDelay>10</initialDelay>\n"
+                + "        <maxDelay>200</maxDelay>\n"
+                + "    </retry>\n"
+                + "    <circuitBreaker>\n"
+                + "        <failureThreshold>0</failureThreshold>\n"
+                + "    </circuitBreaker>\n"
+                + "</config_plugin>\n";
+        Files.write(configFolder.resolve("plugin_intranda_step_oid_creation.xml"), xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Create the METS file and the images of a process and its step
+     */
+    private Step createProcess(int id) throws Exception {
+        Path processFolder = metadataFolder.resolve(String.valueOf(id));
+        Path master = Files.createDirectories(processFolder.resolve("images").resolve(TITLE + "_master"));
+        Path media = Files.createDirectories(processFolder.resolve("images").resolve(TITLE + "_media"));
+
+        DigitalDocument dd = new DigitalDocument();
+        DocStruct logical = dd.createDocStruct(prefs.getDocStrctTypeByName("Monograph"));
+        DocStruct physical = dd.createDocStruct(prefs.getDocStrctTypeByName("BoundBook"));
+        dd.setLogicalDocStruct(logical);
+        dd.setPhysicalDocStruct(physical);
+        Metadata title = new Metadata(prefs.getMetadataTypeByName("TitleDocMain"));
+        title.setValue("Process " + id);
+        logical.addMetadata(title);
+        Metadata imagePath = new Metadata(prefs.getMetadataTypeByName("pathimagefiles"));
+        imagePath.setValue("./images/");
+        physical.addMetadata(imagePath);
+        for (int p = 1; p <= pages; p++) {
+            String basename = String.format("%08d", p);
+            Files.createFile(master.resolve(basename + ".tif"));
+            Files.createFile(media.resolve(basename + ".jpg"));
+            DocStruct page = dd.createDocStruct(prefs.getDocStrctTypeByName("page"));
+            page.setImageName(basename + ".jpg");
+            Metadata physPageNumber = new Metadata(prefs.getMetadataTypeByName("physPageNumber"));
+            physPageNumber.setValue(String.valueOf(p));
+            page.addMetadata(physPageNumber);
+            Metadata logicalPageNumber = new Metadata(prefs.getMetadataTypeByName("logicalPageNumber"));
+            logicalPageNumber.setValue("uncounted");
+            page.addMetadata(logicalPageNumber);
+            physical.addChild(page);
+            logical.addReferenceTo(page, "logical_physical");
+        }
+        dd.addAllContentFiles();
+        MetsMods mm = new MetsMods(prefs);
+        mm.setDigitalDocument(dd);
+        mm.write(processFolder.resolve("meta.xml").toString());
+
+        Project project = new Project();
+        project.setTitel("LoadTest");
+        Process process = new Process();
+        process.setId(id);
+        process.setTitel(TITLE);
+        process.setProjekt(project);
+        process.setRegelsatz(ruleset);
+        Step step = new Step();
+        step.setReihenfolge(1);
+        step.setTitel("OID creation");
+        step.setBearbeitungsstatusEnum(StepStatus.OPEN);
+        step.setProzess(process);
+        List<Step> steps = new ArrayList<>();
+        steps.add(step);
+        process.setSchritte(steps);
+        return step;
+    }
+
+    /**
+     * Read the OIDs of the main element and the pages from the state file written after a successful execution
+     */
+    private static List<String> readAssignedOids(Path processFolder) throws IOException {
+        List<String> oids = new ArrayList<>();
+        Path state = processFolder.resolve(OidState.FILENAME);
+        if (!Files.exists(state)) {
+            return oids;
+        }
+        for (String line : Files.readAllLines(state, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t");
+            if (fields.length == 2 && ("main".equals(fields[0]) || "page".equals(fields[0]))) {
+                oids.add(fields[1]);
+            }
+        }
+        return oids;
+    }
+}
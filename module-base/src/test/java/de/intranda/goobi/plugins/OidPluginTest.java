@@ -1,11 +1,14 @@
 package de.intranda.goobi.plugins;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -13,14 +16,23 @@ import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.easymock.Capture;
 import org.easymock.EasyMock;
 import org.goobi.beans.Process;
 import org.goobi.beans.Project;
 import org.goobi.beans.Ruleset;
 import org.goobi.beans.Step;
 import org.goobi.beans.User;
+import org.goobi.production.enums.PluginReturnValue;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Rule;
@@ -33,6 +45,7 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.Helper;
 import de.sub.goobi.helper.VariableReplacer;
 import de.sub.goobi.helper.enums.StepStatus;
 import de.sub.goobi.metadaten.MetadatenHelper;
@@ -40,12 +53,13 @@ import de.sub.goobi.persistence.managers.MetadataManager;
 import de.sub.goobi.persistence.managers.ProcessManager;
 import ugh.dl.DocStruct;
 import ugh.dl.Fileformat;
+import ugh.dl.Metadata;
 import ugh.dl.Prefs;
 import ugh.fileformats.mets.MetsMods;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({ MetadatenHelper.class, VariableReplacer.class, ConfigurationHelper.class, ProcessManager.class, MetadataManager.class,
-        OidStepPlugin.class })
+        OidStepPlugin.class, Helper.class })
 @PowerMockIgnore({ "javax.management.*", "javax.net.ssl.*", "jdk.internal.reflect.*", "com.sun.org.apache.xerces.*", "javax.xml.*", "org.xml.*",
         "org.w3c.*", "javax.crypto.*", "javax.crypto.JceSecurity" })
 
@@ -57,6 +71,7 @@ public class OidPluginTest {
     private File metadataDirectory;
     private Process process;
     private Prefs prefs;
+    private Capture<Map<String, List<String>>> metadataIndex;
     private static String resourcesFolder;
 
     @BeforeClass
@@ -117,15 +132,24 @@ public class OidPluginTest {
         PowerMock.replay(MetadatenHelper.class);
 
         PowerMock.mockStatic(MetadataManager.class);
-        MetadataManager.updateMetadata(1, Collections.emptyMap());
+        metadataIndex = EasyMock.newCapture();
+        EasyMock.expect(MetadataManager.getMetadata(1)).andReturn(new ArrayList<>()).anyTimes();
+        MetadataManager.updateMetadata(EasyMock.eq(1), EasyMock.capture(metadataIndex));
+        EasyMock.expectLastCall().anyTimes();
         MetadataManager.updateJSONMetadata(1, Collections.emptyMap());
+        EasyMock.expectLastCall().anyTimes();
         PowerMock.replay(MetadataManager.class);
         PowerMock.replay(ConfigurationHelper.class);
 
+        PowerMock.mockStaticPartial(Helper.class, "addMessageToProcessJournal");
+        Helper.addMessageToProcessJournal(EasyMock.anyInt(), EasyMock.anyObject(), EasyMock.anyString(), EasyMock.anyString());
+        EasyMock.expectLastCall().anyTimes();
+        PowerMock.replay(Helper.class);
+
         PowerMock.mockStatic(OidStepPlugin.class);
 
         EasyMock.expect(OidStepPlugin.getStringFromUrl(EasyMock.anyString(), EasyMock.anyString(), EasyMock.anyString(), EasyMock.anyString(),
-                EasyMock.anyString())).andReturn("{\"oids\":[300006252,300006253,300006254,300006255,300006256,300006257]}").anyTimes();
+                EasyMock.anyString(), EasyMock.anyString())).andReturn("{\"oids\":[300006252,300006253,300006254,300006255,300006256,300006257]}").anyTimes();
         process = getProcess();
 
         Ruleset ruleset = PowerMock.createMock(Ruleset.class);
@@ -158,6 +182,33 @@ public class OidPluginTest {
 
     }
 
+    @Test
+    public void testConfiguration() {
+        OidConfiguration config = OidConfiguration.getInstance("intranda_step_oid_creation", process.getSchritte().get(0));
+        assertEquals("https://example.com/management/api/oid/new/", config.getUrl());
+        assertEquals(1000, config.getChunkSize());
+        assertEquals(4, config.getRenameThreads());
+        assertEquals(1, config.getUrls().size());
+
+        // the step specific section only overwrites its own values, the others come from the project section
+        config = OidConfiguration.getInstance("intranda_step_oid_creation", "OtherProject", "test step");
+        assertEquals("https://other.example.com/management/api/oid/new/", config.getUrl());
+        assertEquals(10, config.getChunkSize());
+        assertEquals(1, config.getRenameThreads());
+
+        config = OidConfiguration.getInstance("intranda_step_oid_creation", "OtherProject", "other step");
+        assertEquals("https://other.example.com/management/api/oid/new/", config.getUrl());
+        assertEquals(10, config.getChunkSize());
+        assertEquals(4, config.getRenameThreads());
+        assertEquals("Accept", config.getHeaderParam());
+
+        // only processes with the same request settings share a batch request
+        OidConfiguration sample = OidConfiguration.getInstance("intranda_step_oid_creation", "SampleProject", "other step");
+        assertEquals(sample.getRequestSettings(), OidConfiguration.getInstance("intranda_step_oid_creation", "SampleProject", "test step")
+                .getRequestSettings());
+        assertNotEquals(sample.getRequestSettings(), config.getRequestSettings());
+    }
+
     @Test
     public void testExecute() throws Exception {
         OidStepPlugin plugin = new OidStepPlugin();
@@ -176,7 +227,9 @@ public class OidPluginTest {
         Arrays.sort(filesInMediaFolder);
         assertEquals("00000001.jpg", filesInMediaFolder[0]);
 
+        long renamedBefore = OidMetrics.getInstance().getFilesRenamed();
         assertTrue(plugin.execute());
+        assertEquals(10, OidMetrics.getInstance().getFilesRenamed() - renamedBefore);
 
         // open created file
         Fileformat ff = new MetsMods(prefs);
@@ -202,6 +255,131 @@ public class OidPluginTest {
 
     }
 
+    @Test
+    public void testDeferRenames() throws Exception {
+        process.getProjekt().setTitel("DeferredProject");
+        OidStepPlugin plugin = new OidStepPlugin();
+        plugin.initialize(process.getSchritte().get(0), "");
+        assertTrue(plugin.execute());
+
+        // the METS file contains the new names, the files are not renamed yet
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(processDirectory.getAbsolutePath() + "/meta.xml");
+        DocStruct page = ff.getDigitalDocument().getPhysicalDocStruct().getAllChildren().get(0);
+        assertEquals("300006253.jpg", page.getImageName());
+        String[] filesInMasterFolder = new File(processDirectory.getAbsolutePath() + "/images/00469418X_master").list();
+        Arrays.sort(filesInMasterFolder);
+        assertEquals("00000001.tif", filesInMasterFolder[0]);
+
+        DeferredRenamer renamer = new DeferredRenamer("DeferredProject");
+        assertTrue(renamer.hasDeferredRenames(process));
+        assertEquals(PluginReturnValue.FINISH, renamer.execute(process));
+        assertFalse(renamer.hasDeferredRenames(process));
+        filesInMasterFolder = new File(processDirectory.getAbsolutePath() + "/images/00469418X_master").list();
+        Arrays.sort(filesInMasterFolder);
+        assertEquals("300006253.tif", filesInMasterFolder[0]);
+    }
+
+    @Test
+    public void testValidateFolders() throws Exception {
+        // the media folder is validated and misses a file
+        process.getProjekt().setTitel("ValidatedProject");
+        Files.delete(Paths.get(processDirectory.getAbsolutePath(), "images/00469418X_media/00000005.jpg"));
+        OidStepPlugin plugin = new OidStepPlugin();
+        plugin.initialize(process.getSchritte().get(0), "");
+        assertFalse(plugin.execute());
+
+        // no OIDs were requested and no file was renamed
+        assertFalse(Files.exists(processDirectory.toPath().resolve(RenameJournal.FILENAME)));
+        String[] filesInMasterFolder = new File(processDirectory.getAbsolutePath() + "/images/00469418X_master").list();
+        Arrays.sort(filesInMasterFolder);
+        assertEquals("00000001.tif", filesInMasterFolder[0]);
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        Map<Integer, PluginReturnValue> results = new OidBatchRunner(2).run(process.getSchritte());
+        assertEquals(PluginReturnValue.FINISH, results.get(1));
+        // the process is unlocked after its OIDs are assigned
+        assertEquals(0, ProcessLocks.size());
+
+        String[] filesInMasterFolder = new File(processDirectory.getAbsolutePath() + "/images/00469418X_master").list();
+        Arrays.sort(filesInMasterFolder);
+        assertEquals("300006253.tif", filesInMasterFolder[0]);
+        assertFalse(Files.exists(processDirectory.toPath().resolve(RenameJournal.FILENAME)));
+    }
+
+    @Test
+    public void testReuseAllocatedOids() throws Exception {
+        // an interrupted execution allocated the OIDs, but did not assign them
+        RenameJournal journal = RenameJournal.open(processDirectory.toPath());
+        journal.setRequestKey("1-0-1");
+        journal.setAllocatedOids(new long[] { 400000001, 400000002, 400000003, 400000004, 400000005, 400000006 });
+        journal.write();
+
+        long requestedBefore = OidMetrics.getInstance().getOidsRequested();
+        long usedBefore = OidMetrics.getInstance().getOidsUsed();
+        OidStepPlugin plugin = new OidStepPlugin();
+        plugin.initialize(process.getSchritte().get(0), "");
+        assertTrue(plugin.execute());
+
+        // the OIDs are not requested again, but used
+        assertEquals(0, OidMetrics.getInstance().getOidsRequested() - requestedBefore);
+        assertEquals(6, OidMetrics.getInstance().getOidsUsed() - usedBefore);
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(processDirectory.getAbsolutePath() + "/meta.xml");
+        DocStruct log = ff.getDigitalDocument().getLogicalDocStruct();
+        assertEquals("400000001", log.getAllMetadataByType(prefs.getMetadataTypeByName("CatalogIDDigital")).get(0).getValue());
+    }
+
+    @Test
+    public void testStreamingMets() throws Exception {
+        String metadata = new String(Files.readAllBytes(Paths.get(resourcesFolder + "meta.xml")), "UTF-8");
+        // the identifier is replaced in the first run and inserted in the second one
+        String withoutIdentifier = metadata.replaceAll("\\s*<goobi:metadata name=\"CatalogIDDigital\">[^<]*</goobi:metadata>", "");
+        for (String content : Arrays.asList(metadata, withoutIdentifier)) {
+            resetProcessDirectory(content);
+            process.getProjekt().setTitel("SampleProject");
+            OidStepPlugin plugin = new OidStepPlugin();
+            plugin.initialize(process.getSchritte().get(0), "");
+            assertTrue(plugin.execute());
+            List<String> expected = readAssignedValues();
+
+            resetProcessDirectory(content);
+            metadataIndex.reset();
+            process.getProjekt().setTitel("StreamingProject");
+            plugin = new OidStepPlugin();
+            plugin.initialize(process.getSchritte().get(0), "");
+            assertTrue(plugin.execute());
+            assertEquals(expected, readAssignedValues());
+            assertTrue(expected.contains("CatalogIDDigital 300006252"));
+
+            // the identifier is updated in the metadata index of the database
+            assertEquals(Collections.singletonList("300006252"), metadataIndex.getValue().get("CatalogIDDigital"));
+            assertEquals(Collections.singletonList("300006252"), metadataIndex.getValue().get("_urn"));
+        }
+    }
+
+    @Test
+    public void testBatchInterrupted() throws Exception {
+        // a batch requested the OIDs and stored them, then the server stopped before they were assigned
+        OidStepPlugin interrupted = new OidStepPlugin();
+        interrupted.initialize(process.getSchritte().get(0), "");
+        assertEquals(null, interrupted.prepare());
+        long[] requested = new long[] { 400000001, 400000002, 400000003, 400000004, 400000005, 400000006 };
+        assertEquals(null, interrupted.storeAllocatedOids(requested));
+
+        // the next batch assigns the same OIDs without a new request
+        long requestedBefore = OidMetrics.getInstance().getOidsRequested();
+        Map<Integer, PluginReturnValue> results = new OidBatchRunner(2).run(process.getSchritte());
+        assertEquals(PluginReturnValue.FINISH, results.get(1));
+        assertEquals(0, OidMetrics.getInstance().getOidsRequested() - requestedBefore);
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(processDirectory.getAbsolutePath() + "/meta.xml");
+        DocStruct page = ff.getDigitalDocument().getPhysicalDocStruct().getAllChildren().get(0);
+        assertEquals("400000002", page.getAllMetadataByType(prefs.getMetadataTypeByName("_urn")).get(0).getValue());
+    }
+
     @Test
     public void testCreatePagination() throws Exception {
         Path metaSource = Paths.get(resourcesFolder + "meta2.xml");
@@ -231,6 +409,46 @@ public class OidPluginTest {
 
     }
 
+    private void resetProcessDirectory(String metadata) throws IOException {
+        try (Stream<Path> files = Files.walk(processDirectory.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+        processDirectory.mkdirs();
+        Files.write(Paths.get(processDirectory.getAbsolutePath(), "meta.xml"), metadata.getBytes("UTF-8"));
+        createProcessDirectory(processDirectory);
+    }
+
+    /**
+     * Read the identifier, the OIDs of the physical root and the pages and all file locations of the METS file
+     */
+    private List<String> readAssignedValues() throws Exception {
+        List<String> values = new ArrayList<>();
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(processDirectory.getAbsolutePath() + "/meta.xml");
+        for (Metadata md : ff.getDigitalDocument().getLogicalDocStruct().getAllMetadataByType(prefs.getMetadataTypeByName("CatalogIDDigital"))) {
+            values.add("CatalogIDDigital " + md.getValue());
+        }
+        DocStruct physical = ff.getDigitalDocument().getPhysicalDocStruct();
+        for (Metadata md : physical.getAllMetadataByType(prefs.getMetadataTypeByName("_urn"))) {
+            values.add("_urn physical " + md.getValue());
+        }
+        for (DocStruct page : physical.getAllChildren()) {
+            for (Metadata md : page.getAllMetadataByType(prefs.getMetadataTypeByName("_urn"))) {
+                values.add("_urn " + page.getImageName() + " " + md.getValue());
+            }
+        }
+        try (InputStream in = Files.newInputStream(Paths.get(processDirectory.getAbsolutePath(), "meta.xml"))) {
+            XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && "FLocat".equals(reader.getLocalName())) {
+                    values.add("FLocat " + reader.getAttributeValue(MetsStreamPatcher.XLINK_NS, "href"));
+                }
+            }
+            reader.close();
+        }
+        return values;
+    }
+
     public Process getProcess() {
         Project project = new Project();
         project.setTitel("SampleProject");
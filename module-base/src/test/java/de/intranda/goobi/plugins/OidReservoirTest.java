@@ -0,0 +1,46 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OidReservoirTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTakeAndRefill() throws Exception {
+        AtomicLong nextOid = new AtomicLong(300006252);
+        OidSource source = count -> {
+            long[] oids = new long[count];
+            for (int i = 0; i < count; i++) {
+                oids[i] = nextOid.getAndIncrement();
+            }
+            return oids;
+        };
+        Path file = folder.getRoot().toPath().resolve("reservoir/oids.dat");
+        OidReservoir reservoir = OidReservoir.getInstance(file, 0, 10, source);
+        assertNull(reservoir.take(3));
+
+        reservoir.refill();
+        for (int i = 0; i < 50 && reservoir.size() == 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(10, reservoir.size());
+        assertArrayEquals(new long[] { 300006252, 300006253, 300006254 }, reservoir.take(3));
+        assertEquals(7, reservoir.size());
+
+        // a new instance for the same file continues with the remaining OIDs
+        assertArrayEquals(new long[] { 300006255 }, OidReservoir.getInstance(file, 0, 10, source).take(1));
+        // not enough OIDs available, request them directly
+        assertEquals(20, reservoir.getOids(20).length);
+    }
+}
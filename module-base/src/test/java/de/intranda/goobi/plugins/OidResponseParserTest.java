@@ -0,0 +1,50 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+public class OidResponseParserTest {
+
+    @Test
+    public void testParse() throws Exception {
+        long[] oids = new long[4];
+        int read = OidResponseParser.parse(new StringReader("{\"status\":\"ok\",\"oids\":[300006252,\"300006253\",300006254]}"), oids, 1, 3);
+        assertEquals(3, read);
+        assertArrayEquals(new long[] { 0, 300006252, 300006253, 300006254 }, oids);
+    }
+
+    @Test
+    public void testIgnoreAdditionalOids() throws Exception {
+        long[] oids = new long[2];
+        assertEquals(2, OidResponseParser.parse(new StringReader("{\"oids\":[1,2,3,4]}"), oids, 0, 2));
+        assertArrayEquals(new long[] { 1, 2 }, oids);
+    }
+
+    @Test
+    public void testParseRanges() throws Exception {
+        long[] oids = new long[5];
+        String response = "{\"ranges\":[{\"start\":300006252,\"count\":2},{\"count\":5,\"start\":\"300007000\"}]}";
+        assertEquals(5, OidResponseParser.parse(new StringReader(response), oids, 0, 5));
+        assertArrayEquals(new long[] { 300006252, 300006253, 300007000, 300007001, 300007002 }, oids);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidRange() throws Exception {
+        OidResponseParser.parse(new StringReader("{\"ranges\":[{\"start\":300006252}]}"), new long[1], 0, 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingOids() throws Exception {
+        OidResponseParser.parse(new StringReader("{\"error\":\"no oids left\"}"), new long[1], 0, 1);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidResponse() throws Exception {
+        OidResponseParser.parse(new StringReader("<html>Service unavailable</html>"), new long[1], 0, 1);
+    }
+}
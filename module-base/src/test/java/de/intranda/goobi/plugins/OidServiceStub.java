@@ -0,0 +1,152 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the OID API. It answers requests to <code>/management/api/oid/new/{n}</code> with n new OIDs. The OIDs of all responses are
+ * unique and increasing.
+ *
+ * The latency of each response and the share of failed requests can be configured to simulate a slow or unreliable service. Failed requests are
+ * answered with status 503 and do not use any OIDs.
+ *
+ * Requests with the header <code>Accept: application/vnd.oid-ranges+json</code> are answered with a range instead of a list of OIDs.
+ */
+class OidServiceStub implements AutoCloseable {
+
+    static final String PATH = "/management/api/oid/new/";
+
+    static final long FIRST_OID = 300000000L;
+
+    static final String RANGES_TYPE = "application/vnd.oid-ranges+json";
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final AtomicLong nextOid = new AtomicLong(FIRST_OID);
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private volatile long latency;
+
+    private volatile long latencyJitter;
+
+    private volatile double errorRate;
+
+    OidServiceStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return url of the endpoint, the number of OIDs must be appended
+     */
+    String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + PATH;
+    }
+
+    /**
+     * Delay each response
+     *
+     * @param latency minimum delay in milliseconds
+     * @param jitter maximum random delay in milliseconds added to the minimum
+     */
+    void setLatency(long latency, long jitter) {
+        this.latency = latency;
+        this.latencyJitter = jitter;
+    }
+
+    /**
+     * @param errorRate share of requests between 0 and 1 that are answered with an error
+     */
+    void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @return number of OIDs handed out so far
+     */
+    long getIssuedOids() {
+        return nextOid.get() - FIRST_OID;
+    }
+
+    long getRequests() {
+        return requests.get();
+    }
+
+    long getErrors() {
+        return errors.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        delay();
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            errors.incrementAndGet();
+            send(exchange, 503, "{\"error\":\"service unavailable\"}");
+            return;
+        }
+        int count;
+        try {
+            count = Integer.parseInt(exchange.getRequestURI().getPath().substring(PATH.length()));
+        } catch (NumberFormatException e) {
+            send(exchange, 400, "{\"error\":\"invalid number\"}");
+            return;
+        }
+        long first = nextOid.getAndAdd(count);
+        if (RANGES_TYPE.equals(exchange.getRequestHeaders().getFirst("Accept"))) {
+            send(exchange, 200, "{\"ranges\":[{\"start\":" + first + ",\"count\":" + count + "}]}");
+            return;
+        }
+        StringBuilder sb = new StringBuilder(count * 11 + 16);
+        sb.append("{\"oids\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(first + i);
+        }
+        sb.append("]}");
+        send(exchange, 200, sb.toString());
+    }
+
+    private void delay() {
+        long millis = latency + (latencyJitter > 0 ? ThreadLocalRandom.current().nextLong(latencyJitter + 1) : 0);
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,39 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OidStateTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIsUnchanged() throws Exception {
+        Path processFolder = folder.newFolder("1").toPath();
+        Path metsFile = processFolder.resolve("meta.xml");
+        Files.write(metsFile, "<mets/>".getBytes(StandardCharsets.UTF_8));
+        assertFalse(OidState.isUnchanged(processFolder, metsFile));
+
+        OidState.write(processFolder, metsFile, "300006252", Arrays.asList("300006253", "300006254"));
+        assertTrue(OidState.isUnchanged(processFolder, metsFile));
+
+        // same content with a new modification date
+        Files.setLastModifiedTime(metsFile, FileTime.fromMillis(Files.getLastModifiedTime(metsFile).toMillis() + 10000));
+        assertTrue(OidState.isUnchanged(processFolder, metsFile));
+
+        // changed content
+        Files.write(metsFile, "<mets:mets/>".getBytes(StandardCharsets.UTF_8));
+        assertFalse(OidState.isUnchanged(processFolder, metsFile));
+    }
+}
@@ -0,0 +1,62 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+
+public class PaginationBuilderTest {
+
+    @Test
+    public void testNaturalOrder() {
+        assertTrue(PaginationBuilder.compareNatural("2.tif", "10.tif") < 0);
+        assertTrue(PaginationBuilder.compareNatural("00000009.tif", "00000010.tif") < 0);
+        assertTrue(PaginationBuilder.compareNatural("page_10.tif", "page_9.tif") > 0);
+        assertTrue(PaginationBuilder.compareNatural("a.tif", "b.tif") < 0);
+        assertEquals(0, PaginationBuilder.compareNatural("00000001.tif", "00000001.tif"));
+
+        List<Path> images = new ArrayList<>(Arrays.asList(Paths.get("10.tif"), Paths.get("1.tif"), Paths.get("2.tif")));
+        images.sort(PaginationBuilder.NATURAL_ORDER);
+        assertEquals(Arrays.asList(Paths.get("1.tif"), Paths.get("2.tif"), Paths.get("10.tif")), images);
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        String resourcesFolder = "src/test/resources/"; // for junit tests in eclipse
+        if (!Files.exists(Paths.get(resourcesFolder))) {
+            resourcesFolder = "target/test-classes/"; // to run mvn test from cli or in jenkins
+        }
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(resourcesFolder + "vd18.xml");
+        DigitalDocument dd = new DigitalDocument();
+        DocStruct logical = dd.createDocStruct(prefs.getDocStrctTypeByName("Monograph"));
+        DocStruct physical = dd.createDocStruct(prefs.getDocStrctTypeByName("BoundBook"));
+        dd.setLogicalDocStruct(logical);
+        dd.setPhysicalDocStruct(physical);
+
+        List<Path> images = Arrays.asList(Paths.get("images/00000001.tif"), Paths.get("images/00000002.tif"), Paths.get("images/00000003.tif"));
+        assertEquals(3, new PaginationBuilder(prefs).build(dd, logical, physical, images));
+        assertEquals(3, physical.getAllChildren().size());
+        assertEquals(3, logical.getAllToReferences("logical_physical").size());
+        DocStruct last = physical.getAllChildren().get(2);
+        assertEquals("3", last.getAllMetadataByType(prefs.getMetadataTypeByName("physPageNumber")).get(0).getValue());
+        assertEquals("uncounted", last.getAllMetadataByType(prefs.getMetadataTypeByName("logicalPageNumber")).get(0).getValue());
+    }
+
+    @Test(expected = PreferencesException.class)
+    public void testMissingPageType() throws Exception {
+        new PaginationBuilder(new Prefs());
+    }
+}
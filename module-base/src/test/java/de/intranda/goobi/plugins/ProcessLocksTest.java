@@ -0,0 +1,47 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ProcessLocksTest {
+
+    @Test
+    public void testLock() throws Exception {
+        ProcessLocks.lock(17);
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread second = new Thread(() -> {
+            try {
+                ProcessLocks.lock(17);
+                locked.countDown();
+                ProcessLocks.unlock(17);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        second.start();
+        // the second execution waits until the first one is finished
+        assertFalse(locked.await(100, TimeUnit.MILLISECONDS));
+        ProcessLocks.unlock(17);
+        assertTrue(locked.await(5, TimeUnit.SECONDS));
+        second.join();
+    }
+
+    @Test
+    public void testTryLock() throws Exception {
+        assertTrue(ProcessLocks.tryLock(3));
+        assertFalse(ProcessLocks.tryLock(3));
+        // other processes are not blocked
+        assertTrue(ProcessLocks.tryLock(3 + 256));
+        ProcessLocks.unlock(3 + 256);
+        ProcessLocks.unlock(3);
+
+        // unused locks are removed
+        assertEquals(0, ProcessLocks.size());
+    }
+}
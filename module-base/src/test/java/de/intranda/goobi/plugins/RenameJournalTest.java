@@ -0,0 +1,68 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RenameJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndOpen() throws Exception {
+        Path processFolder = folder.newFolder("1").toPath();
+        RenameJournal journal = RenameJournal.open(processFolder);
+        assertTrue(journal.isEmpty());
+
+        Path master = processFolder.resolve("images/00469418X_master");
+        journal.setMainOid("300006252");
+        journal.addPage("00000001.tif", "300006253");
+        journal.setRenames(Collections.singletonList(new FileRename(master.resolve("00000001.tif"), master.resolve("300006253.tif"))));
+        journal.write();
+        assertTrue(Files.exists(processFolder.resolve(RenameJournal.FILENAME)));
+
+        RenameJournal reopened = RenameJournal.open(processFolder);
+        assertFalse(reopened.isEmpty());
+        assertEquals("300006252", reopened.getMainOid());
+        assertEquals("300006253", reopened.getPageOid("00000001.tif"));
+        assertNull(reopened.getPageOid("00000002.tif"));
+        assertEquals(1, reopened.getRenames().size());
+        assertEquals(master.resolve("300006253.tif"), reopened.getRenames().get(0).getTarget());
+
+        reopened.delete();
+        assertTrue(RenameJournal.open(processFolder).isEmpty());
+    }
+
+    @Test
+    public void testAllocation() throws Exception {
+        Path processFolder = folder.newFolder("2").toPath();
+        RenameJournal journal = RenameJournal.open(processFolder);
+        journal.setRequestKey("2-7-1700000000000");
+        journal.setAllocatedOids(new long[] { 300006252L, 300006253L });
+        journal.write();
+
+        // an allocation alone does not contain any pending work
+        RenameJournal reopened = RenameJournal.open(processFolder);
+        assertTrue(reopened.isEmpty());
+        assertEquals("2-7-1700000000000", reopened.getRequestKey());
+        assertArrayEquals(new long[] { 300006252L, 300006253L }, reopened.getAllocatedOids());
+    }
+
+    @Test
+    public void testOidRanges() {
+        long[] oids = { 300006252L, 300006253L, 300006254L, 300006300L, 300006302L, 300006303L };
+        assertEquals("300006252-300006254,300006300,300006302-300006303", RenameJournal.formatOids(oids));
+        assertArrayEquals(oids, RenameJournal.parseOids(RenameJournal.formatOids(oids)));
+    }
+}
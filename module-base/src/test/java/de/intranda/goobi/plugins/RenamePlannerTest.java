@@ -0,0 +1,64 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RenamePlannerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPlan() throws Exception {
+        Path processFolder = folder.getRoot().toPath();
+        Path master = Files.createDirectories(processFolder.resolve("images/00469418X_master"));
+        Path media = Files.createDirectories(processFolder.resolve("images/00469418X_media"));
+        Files.createFile(master.resolve("00000001.tif"));
+        Files.createFile(master.resolve("00000002.tif"));
+        Files.createFile(media.resolve("00000001.jpg"));
+        Files.createFile(media.resolve("00000002.jpg"));
+        Files.createFile(media.resolve("README"));
+
+        FolderScope scope = new FolderScope(Arrays.asList("images/*", "ocr/*"), Collections.emptyList(), Collections.emptyList(), false);
+        RenamePlanner planner = RenamePlanner.create(processFolder, scope, 2);
+
+        List<FileRename> renames = planner.plan("00000001", "300006253");
+        assertEquals(2, renames.size());
+        for (FileRename rename : renames) {
+            assertEquals(rename.getSource().getParent(), rename.getTarget().getParent());
+            assertTrue(rename.getTarget().getFileName().toString().startsWith("300006253."));
+        }
+        assertEquals("README", planner.plan("README", "300006254").get(0).getSource().getFileName().toString());
+        assertTrue(planner.plan("00000003", "300006255").isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testValidatedFolder() throws Exception {
+        Path processFolder = folder.getRoot().toPath();
+        Path media = Files.createDirectories(processFolder.resolve("images/00469418X_media"));
+        Files.createFile(media.resolve("00000001.jpg"));
+
+        FolderScope scope = new FolderScope(Collections.singletonList("images/*"), Collections.singletonList("images/*_media"),
+                Collections.emptyList(), false);
+        RenamePlanner.create(processFolder, scope, 2);
+    }
+
+    @Test
+    public void testFilenameParts() {
+        assertEquals("00000001", RenamePlanner.getBasename("00000001.tif"));
+        assertEquals("tif", RenamePlanner.getExtension("00000001.tif"));
+        assertEquals("README", RenamePlanner.getBasename("README"));
+        assertEquals("", RenamePlanner.getExtension("README"));
+    }
+}
@@ -0,0 +1,110 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class S3RenameExecutorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * In-memory stand-in for a bucket
+     */
+    private static class InMemoryObjectStore implements ObjectStore {
+
+        private final Map<Path, String> objects = new ConcurrentHashMap<>();
+        private final AtomicInteger copies = new AtomicInteger();
+        private final AtomicInteger deletions = new AtomicInteger();
+        private volatile Path failingCopy;
+
+        @Override
+        public void copy(Path source, Path target) throws IOException {
+            if (source.equals(failingCopy)) {
+                throw new IOException("copy failed");
+            }
+            String content = objects.get(source);
+            if (content == null) {
+                throw new IOException("NoSuchKey " + source);
+            }
+            copies.incrementAndGet();
+            objects.put(target, content);
+        }
+
+        @Override
+        public void delete(Path key) throws IOException {
+            deletions.incrementAndGet();
+            objects.remove(key);
+        }
+    }
+
+    private static List<FileRename> createObjects(InMemoryObjectStore store, int count) {
+        Path master = Paths.get("/bucket/1/images/00469418X_master");
+        List<FileRename> plan = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            Path source = master.resolve(String.format("%08d.tif", i));
+            store.objects.put(source, "image " + i);
+            plan.add(new FileRename(source, master.resolve((300006252 + i) + ".tif")));
+        }
+        return plan;
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<FileRename> plan = createObjects(store, 25);
+        RenameJournal journal = RenameJournal.open(folder.getRoot().toPath());
+        journal.setRenames(plan);
+        journal.write();
+
+        List<String> errors = new S3RenameExecutor(store, journal, 4, 10).execute(plan);
+        assertTrue(errors.isEmpty());
+        assertEquals(25, store.objects.size());
+        assertEquals(25, store.copies.get());
+        assertEquals(25, store.deletions.get());
+        for (FileRename rename : plan) {
+            assertFalse(store.objects.containsKey(rename.getSource()));
+            assertTrue(store.objects.containsKey(rename.getTarget()));
+        }
+    }
+
+    @Test
+    public void testResumeAfterCheckpoint() throws Exception {
+        InMemoryObjectStore store = new InMemoryObjectStore();
+        List<FileRename> plan = createObjects(store, 5);
+        RenameJournal journal = RenameJournal.open(folder.getRoot().toPath());
+        journal.setRenames(plan);
+        journal.write();
+
+        // the copy of the last object fails, so its source is kept
+        store.failingCopy = plan.get(4).getSource();
+        List<String> errors = new S3RenameExecutor(store, journal, 2, 2).execute(plan);
+        assertEquals(1, errors.size());
+        assertTrue(store.objects.containsKey(plan.get(4).getSource()));
+
+        // a new run copies only the missing object
+        store.failingCopy = null;
+        store.copies.set(0);
+        RenameJournal reopened = RenameJournal.open(folder.getRoot().toPath());
+        assertTrue(reopened.isCopied(plan.get(0).getSource()));
+        assertFalse(reopened.isCopied(plan.get(4).getSource()));
+        errors = new S3RenameExecutor(store, reopened, 2, 2).execute(plan);
+        assertTrue(errors.isEmpty());
+        assertEquals(1, store.copies.get());
+        assertEquals(5, store.objects.size());
+    }
+}
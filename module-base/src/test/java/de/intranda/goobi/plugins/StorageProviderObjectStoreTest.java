@@ -0,0 +1,55 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.powermock.api.easymock.PowerMock;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import de.sub.goobi.config.ConfigurationHelper;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ ConfigurationHelper.class })
+@PowerMockIgnore({ "javax.management.*", "javax.net.ssl.*", "jdk.internal.reflect.*", "com.sun.org.apache.xerces.*", "javax.xml.*", "org.xml.*",
+        "org.w3c.*", "javax.crypto.*", "javax.crypto.JceSecurity" })
+public class StorageProviderObjectStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        PowerMock.mockStatic(ConfigurationHelper.class);
+        ConfigurationHelper configurationHelper = EasyMock.createNiceMock(ConfigurationHelper.class);
+        EasyMock.expect(ConfigurationHelper.getInstance()).andReturn(configurationHelper).anyTimes();
+        EasyMock.expect(configurationHelper.useS3()).andReturn(false).anyTimes();
+        EasyMock.replay(configurationHelper);
+        PowerMock.replay(ConfigurationHelper.class);
+    }
+
+    @Test
+    public void testCopyAndDelete() throws Exception {
+        Path master = folder.newFolder("00469418X_master").toPath();
+        Path source = Files.write(master.resolve("00000001.tif"), "image".getBytes());
+        Path target = master.resolve("300006253.tif");
+
+        ObjectStore store = new StorageProviderObjectStore();
+        store.copy(source, target);
+        assertEquals("image", new String(Files.readAllBytes(target)));
+
+        store.delete(source);
+        assertFalse(Files.exists(source));
+        assertEquals("image", new String(Files.readAllBytes(target)));
+    }
+}
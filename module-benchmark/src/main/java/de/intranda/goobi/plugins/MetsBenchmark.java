@@ -0,0 +1,75 @@
+package de.intranda.goobi.plugins;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Reading and writing of the METS file with UGH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MetsBenchmark {
+
+    @Param({ "100", "1000", "10000", "50000" })
+    public int pages;
+
+    // ruleset used to create and read the METS files
+    @Param({ "../module-base/src/test/resources/vd18.xml" })
+    public String ruleset;
+
+    private Path folder;
+    private Path metsFile;
+    private Prefs prefs;
+    private Fileformat fileformat;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        folder = Files.createTempDirectory("oid-benchmark");
+        metsFile = folder.resolve("meta.xml");
+        prefs = new Prefs();
+        prefs.loadPrefs(ruleset);
+        SyntheticProcess.createMetsFile(prefs, metsFile, pages);
+        fileformat = new MetsMods(prefs);
+        fileformat.read(metsFile.toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        SyntheticProcess.delete(folder);
+    }
+
+    @Benchmark
+    public Fileformat readMets() throws Exception {
+        Fileformat ff = new MetsMods(prefs);
+        ff.read(metsFile.toString());
+        return ff;
+    }
+
+    @Benchmark
+    public boolean writeMets() throws Exception {
+        return fileformat.write(folder.resolve("meta_out.xml").toString());
+    }
+}
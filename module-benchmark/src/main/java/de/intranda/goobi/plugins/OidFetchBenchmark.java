@@ -0,0 +1,56 @@
+package de.intranda.goobi.plugins;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Request and parsing of OIDs from a local stand-in of the OID API
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OidFetchBenchmark {
+
+    @Param({ "100", "1000", "10000", "50000" })
+    public int pages;
+
+    @Param({ "1000" })
+    public int chunkSize;
+
+    private OidServiceStub stub;
+
+    private OidSource source;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        stub = new OidServiceStub();
+        source = new HttpOidSource(stub.getUrl(), null, null, "Accept", "application/json", chunkSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        stub.close();
+    }
+
+    @Benchmark
+    public long[] fetchOids() throws Exception {
+        // one OID for each page and one for the work
+        return source.getOids(pages + 1);
+    }
+}
@@ -0,0 +1,126 @@
+package de.intranda.goobi.plugins;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+
+/**
+ * Creation of the pagination for a process without pages from its image folder
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PaginationBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ImageFolder {
+
+        @Param({ "1000", "10000", "50000" })
+        public int images;
+
+        // ruleset used to create the pages
+        @Param({ "../module-base/src/test/resources/vd18.xml" })
+        public String ruleset;
+
+        Path processFolder;
+        Path folder;
+        Prefs prefs;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            processFolder = Files.createTempDirectory("oid-benchmark");
+            folder = SyntheticProcess.createFolders(processFolder, images, 1).keySet().iterator().next();
+            prefs = new Prefs();
+            prefs.loadPrefs(ruleset);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            SyntheticProcess.delete(processFolder);
+        }
+    }
+
+    /**
+     * Empty document, created again for each call because the pagination changes it
+     */
+    @State(Scope.Thread)
+    public static class Document {
+
+        DigitalDocument dd;
+        DocStruct logical;
+        DocStruct physical;
+
+        @Setup(Level.Invocation)
+        public void setUp(ImageFolder folder) throws Exception {
+            dd = new DigitalDocument();
+            logical = dd.createDocStruct(folder.prefs.getDocStrctTypeByName("Monograph"));
+            physical = dd.createDocStruct(folder.prefs.getDocStrctTypeByName("BoundBook"));
+            dd.setLogicalDocStruct(logical);
+            dd.setPhysicalDocStruct(physical);
+        }
+    }
+
+    @Benchmark
+    public List<Path> listImages(ImageFolder folder) throws Exception {
+        return PaginationBuilder.listLocalImages(folder.folder);
+    }
+
+    @Benchmark
+    public int build(ImageFolder folder, Document document) throws Exception {
+        PaginationBuilder builder = new PaginationBuilder(folder.prefs);
+        return builder.build(document.dd, document.logical, document.physical, PaginationBuilder.listLocalImages(folder.folder));
+    }
+
+    /**
+     * Pagination with a lookup of all types in the ruleset for each image, as it was done before the builder
+     */
+    @Benchmark
+    public int buildWithLookups(ImageFolder folder, Document document) throws Exception {
+        Prefs prefs = folder.prefs;
+        List<Path> images;
+        try (Stream<Path> files = Files.list(folder.folder)) {
+            images = files.sorted().collect(Collectors.toList());
+        }
+        int currentPhysicalOrder = 0;
+        for (Path image : images) {
+            DocStruct page = document.dd.createDocStruct(prefs.getDocStrctTypeByName("page"));
+            page.setImageName(image.toString());
+            MetadataType mdt = prefs.getMetadataTypeByName("physPageNumber");
+            Metadata mdTemp = new Metadata(mdt);
+            mdTemp.setValue(String.valueOf(++currentPhysicalOrder));
+            page.addMetadata(mdTemp);
+            mdt = prefs.getMetadataTypeByName("logicalPageNumber");
+            mdTemp = new Metadata(mdt);
+            mdTemp.setValue("uncounted");
+            page.addMetadata(mdTemp);
+            document.physical.addChild(page);
+            document.logical.addReferenceTo(page, "logical_physical");
+        }
+        return currentPhysicalOrder;
+    }
+}
@@ -0,0 +1,70 @@
+package de.intranda.goobi.plugins;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Execution of a rename plan on the local file system. Each invocation creates a new folder tree, so only single shot times are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RenameExecutionBenchmark {
+
+    @Param({ "100", "1000", "10000", "50000" })
+    public int pages;
+
+    @Param({ "1", "4", "8" })
+    public int folders;
+
+    @Param({ "1", "4", "16" })
+    public int threads;
+
+    private Path processFolder;
+
+    private List<FileRename> plan;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+        processFolder = Files.createTempDirectory("oid-benchmark");
+        SyntheticProcess.createFolders(processFolder, pages, folders);
+        FolderScope scope = new FolderScope(Arrays.asList("images/*", "ocr/*"), Collections.emptyList(), Collections.emptyList(), false);
+        RenamePlanner planner = RenamePlanner.create(processFolder, scope, pages);
+        plan = new ArrayList<>();
+        for (int p = 1; p <= pages; p++) {
+            plan.addAll(planner.plan(RenamePlanner.getBasename(SyntheticProcess.getFilename(p, 0)), String.valueOf(300000000L + p)));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws Exception {
+        SyntheticProcess.delete(processFolder);
+    }
+
+    @Benchmark
+    public List<String> executeRenames() {
+        return new RenameExecutor(threads).execute(plan);
+    }
+}
@@ -0,0 +1,115 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Planning of the renames for all pages of a process. The planner is created the same way as in the plugin: the configured folders are found
+ * with a {@link FolderScope} and their files are read from disk into the basename index.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RenamePlanningBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Folders {
+
+        @Param({ "100", "1000", "10000", "50000" })
+        public int pages;
+
+        @Param({ "1", "4", "8" })
+        public int folders;
+
+        Path processFolder;
+
+        FolderScope scope;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            processFolder = Files.createTempDirectory("oid-benchmark");
+            SyntheticProcess.createFolders(processFolder, pages, folders);
+            // the default folders of the sample configuration
+            scope = new FolderScope(Arrays.asList("images/*", "ocr/*"), Collections.emptyList(), Collections.emptyList(), false);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            SyntheticProcess.delete(processFolder);
+        }
+    }
+
+    /**
+     * Smaller sizes for the scan over all files per page that was used before the basename index, larger sizes take hours
+     */
+    @State(Scope.Benchmark)
+    public static class SmallFolders {
+
+        @Param({ "100", "1000", "5000" })
+        public int pages;
+
+        @Param({ "1", "4", "8" })
+        public int folders;
+
+        Map<Path, List<Path>> folderAndFiles;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            folderAndFiles = SyntheticProcess.createFolderList(Paths.get("/opt/digiverso/goobi/metadata/1"), pages, folders);
+        }
+    }
+
+    @Benchmark
+    public List<FileRename> plan(Folders state) throws IOException {
+        RenamePlanner planner = RenamePlanner.create(state.processFolder, state.scope, state.pages);
+        List<FileRename> plan = new ArrayList<>();
+        for (int p = 1; p <= state.pages; p++) {
+            plan.addAll(planner.plan(RenamePlanner.getBasename(SyntheticProcess.getFilename(p, 0)), String.valueOf(300000000L + p)));
+        }
+        return plan;
+    }
+
+    @Benchmark
+    public List<FileRename> planWithFolderScan(SmallFolders state) {
+        List<FileRename> plan = new ArrayList<>();
+        for (int p = 1; p <= state.pages; p++) {
+            String basename = RenamePlanner.getBasename(SyntheticProcess.getFilename(p, 0));
+            String oid = String.valueOf(300000000L + p);
+            for (Map.Entry<Path, List<Path>> entry : state.folderAndFiles.entrySet()) {
+                for (Path file : entry.getValue()) {
+                    String filenameToCheck = file.getFileName().toString();
+                    String filenamePrefixToCheck = filenameToCheck.substring(0, filenameToCheck.lastIndexOf("."));
+                    String fileExtension = filenameToCheck.substring(filenameToCheck.lastIndexOf(".") + 1);
+                    if (filenamePrefixToCheck.equals(basename)) {
+                        plan.add(new FileRename(file, Paths.get(entry.getKey().toString(), oid + "." + fileExtension)));
+                    }
+                }
+            }
+        }
+        return plan;
+    }
+}
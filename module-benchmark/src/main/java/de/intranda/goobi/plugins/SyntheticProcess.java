@@ -0,0 +1,122 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Generator for synthetic processes: a METS file with the given number of pages and an image folder tree with one file per page in each
+ * derivative folder.
+ */
+final class SyntheticProcess {
+
+    private static final String[] EXTENSIONS = { "tif", "jpg", "xml", "txt", "png", "jp2", "pdf", "html" };
+
+    private SyntheticProcess() {
+    }
+
+    static String getFilename(int page, int folder) {
+        return String.format("%08d.%s", page, EXTENSIONS[folder % EXTENSIONS.length]);
+    }
+
+    /**
+     * Create the folder and file list of a process in memory
+     *
+     * @param processFolder process folder
+     * @param pages number of pages
+     * @param folders number of derivative folders
+     * @return files of each folder
+     */
+    static Map<Path, List<Path>> createFolderList(Path processFolder, int pages, int folders) {
+        Map<Path, List<Path>> folderAndFiles = new LinkedHashMap<>();
+        for (int f = 0; f < folders; f++) {
+            Path folder = processFolder.resolve("images").resolve("folder_" + f);
+            List<Path> files = new ArrayList<>(pages);
+            for (int p = 1; p <= pages; p++) {
+                files.add(folder.resolve(getFilename(p, f)));
+            }
+            folderAndFiles.put(folder, files);
+        }
+        return folderAndFiles;
+    }
+
+    /**
+     * Create the folders and empty image files on disk
+     *
+     * @param processFolder process folder
+     * @param pages number of pages
+     * @param folders number of derivative folders
+     * @return files of each folder
+     * @throws IOException
+     */
+    static Map<Path, List<Path>> createFolders(Path processFolder, int pages, int folders) throws IOException {
+        Map<Path, List<Path>> folderAndFiles = createFolderList(processFolder, pages, folders);
+        for (Map.Entry<Path, List<Path>> entry : folderAndFiles.entrySet()) {
+            Files.createDirectories(entry.getKey());
+            for (Path file : entry.getValue()) {
+                Files.createFile(file);
+            }
+        }
+        return folderAndFiles;
+    }
+
+    /**
+     * Write a METS file with a monograph and the given number of pages
+     *
+     * @param prefs ruleset
+     * @param metsFile file to write
+     * @param pages number of pages
+     * @throws UGHException
+     */
+    static void createMetsFile(Prefs prefs, Path metsFile, int pages) throws UGHException {
+        DigitalDocument dd = new DigitalDocument();
+        DocStruct logical = dd.createDocStruct(prefs.getDocStrctTypeByName("Monograph"));
+        DocStruct physical = dd.createDocStruct(prefs.getDocStrctTypeByName("BoundBook"));
+        dd.setLogicalDocStruct(logical);
+        dd.setPhysicalDocStruct(physical);
+
+        Metadata imagePath = new Metadata(prefs.getMetadataTypeByName("pathimagefiles"));
+        imagePath.setValue("./images/");
+        physical.addMetadata(imagePath);
+
+        for (int p = 1; p <= pages; p++) {
+            DocStruct page = dd.createDocStruct(prefs.getDocStrctTypeByName("page"));
+            page.setImageName(getFilename(p, 0));
+            Metadata physPageNumber = new Metadata(prefs.getMetadataTypeByName("physPageNumber"));
+            physPageNumber.setValue(String.valueOf(p));
+            page.addMetadata(physPageNumber);
+            Metadata logicalPageNumber = new Metadata(prefs.getMetadataTypeByName("logicalPageNumber"));
+            logicalPageNumber.setValue("uncounted");
+            page.addMetadata(logicalPageNumber);
+            physical.addChild(page);
+            logical.addReferenceTo(page, "logical_physical");
+        }
+        dd.addAllContentFiles();
+
+        MetsMods mm = new MetsMods(prefs);
+        mm.setDigitalDocument(dd);
+        mm.write(metsFile.toString());
+    }
+
+    static void delete(Path folder) throws IOException {
+        if (!Files.exists(folder)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}